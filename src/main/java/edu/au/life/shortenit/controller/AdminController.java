@@ -4,6 +4,7 @@ import edu.au.life.shortenit.dto.RoleUpdateRequest;
 import edu.au.life.shortenit.dto.UserResponse;
 import edu.au.life.shortenit.entity.User;
 import edu.au.life.shortenit.service.AdminService;
+import edu.au.life.shortenit.service.ClickRollupService;
 import edu.au.life.shortenit.util.SecurityUtils;
 import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
@@ -17,9 +18,11 @@ import java.util.List;
 public class AdminController {
 
     private final AdminService adminService;
+    private final ClickRollupService clickRollupService;
 
-    public AdminController(AdminService adminService) {
+    public AdminController(AdminService adminService, ClickRollupService clickRollupService) {
         this.adminService = adminService;
+        this.clickRollupService = clickRollupService;
     }
 
     @GetMapping("/users")
@@ -78,5 +81,14 @@ public class AdminController {
         return ResponseEntity.ok(new ProtectedStatusResponse(isProtected));
     }
 
+    @PostMapping("/analytics/rollups/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<RollupRebuildResponse> rebuildClickRollups() {
+        int buckets = clickRollupService.rebuild();
+        return ResponseEntity.ok(new RollupRebuildResponse(buckets));
+    }
+
     public record ProtectedStatusResponse(boolean isProtectedAdmin) {}
+
+    public record RollupRebuildResponse(int buckets) {}
 }
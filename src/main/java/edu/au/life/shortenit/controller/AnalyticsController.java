@@ -1,20 +1,24 @@
 package edu.au.life.shortenit.controller;
 
 import edu.au.life.shortenit.dto.AnalyticsResponse;
-import edu.au.life.shortenit.entity.User;
+import edu.au.life.shortenit.dto.CursorPage;
+import edu.au.life.shortenit.security.CurrentUser;
 import edu.au.life.shortenit.service.AnalyticsService;
+import edu.au.life.shortenit.service.ClickExportService;
 import edu.au.life.shortenit.util.SecurityUtils;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
-import java.util.List;
 
 import java.time.LocalDateTime;
 
@@ -24,14 +28,17 @@ import java.time.LocalDateTime;
 public class AnalyticsController {
 
     private final AnalyticsService analyticsService;
+    private final ClickExportService clickExportService;
 
     @GetMapping
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<?> getAllAnalytics(
             @RequestParam(required = false) Integer page,
-            @RequestParam(required = false) Integer size) {
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
 
-        User currentUser = SecurityUtils.getCurrentUser();
+        CurrentUser currentUser = SecurityUtils.getCurrentPrincipal();
 
         if (page != null && size != null) {
             int pageIndex = Math.max(0, page - 1);
@@ -40,14 +47,14 @@ public class AnalyticsController {
             return ResponseEntity.ok(response);
         }
 
-        List<AnalyticsResponse> response = analyticsService.getAllAnalytics(currentUser);
+        CursorPage<AnalyticsResponse> response = analyticsService.getAnalyticsPage(currentUser, cursor, limit);
         return ResponseEntity.ok(response);
     }
 
     @GetMapping("/{shortCode}")
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<AnalyticsResponse> getAnalytics(@PathVariable String shortCode) {
-        User currentUser = SecurityUtils.getCurrentUser();
+        CurrentUser currentUser = SecurityUtils.getCurrentPrincipal();
         AnalyticsResponse analytics = analyticsService.getAnalytics(shortCode, currentUser);
         return ResponseEntity.ok(analytics);
     }
@@ -59,8 +66,31 @@ public class AnalyticsController {
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end) {
 
-        User currentUser = SecurityUtils.getCurrentUser();
+        CurrentUser currentUser = SecurityUtils.getCurrentPrincipal();
         AnalyticsResponse analytics = analyticsService.getAnalyticsByDateRange(shortCode, start, end, currentUser);
         return ResponseEntity.ok(analytics);
     }
-}
\ No newline at end of file
+
+    /**
+     * Streams raw clicks, optionally limited to a time range, as CSV or NDJSON.
+     */
+    @GetMapping("/{shortCode}/export")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<StreamingResponseBody> exportClicks(
+            @PathVariable String shortCode,
+            @RequestParam(defaultValue = "CSV") ClickExportService.ExportFormat format,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end) {
+
+        CurrentUser currentUser = SecurityUtils.getCurrentPrincipal();
+        Long urlId = clickExportService.authorizeExport(shortCode, currentUser);
+
+        boolean csv = format == ClickExportService.ExportFormat.CSV;
+        StreamingResponseBody body = outputStream -> clickExportService.export(urlId, start, end, format, outputStream);
+        return ResponseEntity.ok()
+                .contentType(csv ? new MediaType("text", "csv") : new MediaType("application", "x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + shortCode + "-clicks." + (csv ? "csv" : "ndjson") + "\"")
+                .body(body);
+    }
+}
@@ -53,7 +53,7 @@ public class AuthController {
 
     @PostMapping("/logout")
     public ResponseEntity<Void> logout() {
-        User currentUser = SecurityUtils.getCurrentUser();
+        User currentUser = SecurityUtils.getCurrentUserReference();
         authService.logout(currentUser);
         return ResponseEntity.ok().build();
     }
@@ -1,22 +1,34 @@
 package edu.au.life.shortenit.controller;
 
+import edu.au.life.shortenit.dto.BulkShortenResponse;
+import edu.au.life.shortenit.dto.CursorPage;
 import edu.au.life.shortenit.dto.UrlResponse;
 import edu.au.life.shortenit.dto.UrlShortenRequest;
 import edu.au.life.shortenit.dto.UrlUpdateRequest;
 import edu.au.life.shortenit.dto.UrlWithAnalyticsResponse;
-import edu.au.life.shortenit.entity.User;
+import edu.au.life.shortenit.security.CurrentUser;
+import edu.au.life.shortenit.service.BulkUrlService;
 import edu.au.life.shortenit.service.UrlService;
 import edu.au.life.shortenit.util.SecurityUtils;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.json.JsonMapper;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 
 @RestController
@@ -25,22 +37,81 @@ import java.util.List;
 public class UrlController {
 
     private final UrlService urlService;
+    private final BulkUrlService bulkUrlService;
+    // The application mapper, so NDJSON lines bind exactly like the JSON bulk body
+    private final JsonMapper jsonMapper;
 
     @PostMapping
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<UrlResponse> createShortUrl(@Valid @RequestBody UrlShortenRequest request) {
-        User currentUser = SecurityUtils.getCurrentUser();
+        CurrentUser currentUser = SecurityUtils.getCurrentPrincipal();
         UrlResponse response = urlService.shortenUrl(request, currentUser);
         return ResponseEntity.ok(response);
     }
 
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<BulkShortenResponse> createShortUrls(@RequestBody List<UrlShortenRequest> requests) {
+        CurrentUser currentUser = SecurityUtils.getCurrentPrincipal();
+        List<BulkShortenResponse.Item> results = bulkUrlService.shortenUrls(requests, 0, currentUser);
+        return ResponseEntity.ok(BulkShortenResponse.of(results));
+    }
+
+    /**
+     * One UrlShortenRequest per line; lines are shortened a chunk at a time as they arrive.
+     */
+    @PostMapping(value = "/bulk", consumes = "application/x-ndjson")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<BulkShortenResponse> createShortUrlsFromNdjson(HttpServletRequest request) throws IOException {
+        CurrentUser currentUser = SecurityUtils.getCurrentPrincipal();
+        List<BulkShortenResponse.Item> results = new ArrayList<>();
+        List<UrlShortenRequest> chunk = new ArrayList<>(BulkUrlService.CHUNK_SIZE);
+        int chunkStart = 0;
+        int lineNumber = 0;
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (chunk.isEmpty()) {
+                    chunkStart = lineNumber;
+                }
+                try {
+                    chunk.add(jsonMapper.readValue(line, UrlShortenRequest.class));
+                } catch (JacksonException e) {
+                    // Flush what precedes the bad line so indexes stay in order
+                    results.addAll(bulkUrlService.shortenUrls(chunk, chunkStart, currentUser));
+                    chunk.clear();
+                    results.add(BulkShortenResponse.Item.builder()
+                            .index(lineNumber)
+                            .error("Invalid JSON: " + e.getOriginalMessage())
+                            .build());
+                }
+                lineNumber++;
+                if (chunk.size() == BulkUrlService.CHUNK_SIZE) {
+                    results.addAll(bulkUrlService.shortenUrls(chunk, chunkStart, currentUser));
+                    chunk.clear();
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            results.addAll(bulkUrlService.shortenUrls(chunk, chunkStart, currentUser));
+        }
+        return ResponseEntity.ok(BulkShortenResponse.of(results));
+    }
+
     @GetMapping
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<?> getUserUrls(
             @RequestParam(required = false) Integer page,
-            @RequestParam(required = false) Integer size) {
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
 
-        User currentUser = SecurityUtils.getCurrentUser();
+        CurrentUser currentUser = SecurityUtils.getCurrentPrincipal();
 
         // If pagination params provided, return paginated results
         if (page != null && size != null) {
@@ -50,8 +121,8 @@ public class UrlController {
             return ResponseEntity.ok(response);
         }
 
-        // No pagination params, return all URLs
-        List<UrlResponse> response = urlService.getAllUrls(currentUser);
+        // Otherwise keyset pagination; follow nextCursor for further pages
+        CursorPage<UrlResponse> response = urlService.getUrlsPage(currentUser, cursor, limit);
         return ResponseEntity.ok(response);
     }
 
@@ -59,7 +130,7 @@ public class UrlController {
     @GetMapping("/{code}")
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<UrlResponse> getUrlByCode(@PathVariable String code) {
-        User currentUser = SecurityUtils.getCurrentUser();
+        CurrentUser currentUser = SecurityUtils.getCurrentPrincipal();
         UrlResponse response = urlService.getUrlInfo(code, currentUser);  // PHASE 3: UPDATED
         return ResponseEntity.ok(response);
     }
@@ -69,7 +140,7 @@ public class UrlController {
     public ResponseEntity<UrlResponse> updateUrl(
             @PathVariable String code,
             @Valid @RequestBody UrlUpdateRequest request) {
-        User currentUser = SecurityUtils.getCurrentUser();
+        CurrentUser currentUser = SecurityUtils.getCurrentPrincipal();
         UrlResponse response = urlService.updateUrl(code, request, currentUser);
         return ResponseEntity.ok(response);
     }
@@ -77,7 +148,7 @@ public class UrlController {
     @DeleteMapping("/{code}")
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<Void> deleteUrl(@PathVariable String code) {
-        User currentUser = SecurityUtils.getCurrentUser();
+        CurrentUser currentUser = SecurityUtils.getCurrentPrincipal();
         urlService.deleteUrl(code, currentUser);
         return ResponseEntity.noContent().build();
     }
@@ -4,6 +4,7 @@ package edu.au.life.shortenit.controller;
 import edu.au.life.shortenit.dto.*;
 import edu.au.life.shortenit.entity.ApiKey;
 import edu.au.life.shortenit.entity.User;
+import edu.au.life.shortenit.security.CurrentUser;
 import edu.au.life.shortenit.repository.UserRepository;
 import edu.au.life.shortenit.service.ApiKeyService;
 import edu.au.life.shortenit.service.UserService;
@@ -40,21 +41,21 @@ public class UserController {
 
     @PostMapping("/me/api-keys")
     public ResponseEntity<ApiKeyResponse> createApiKey(@Valid @RequestBody ApiKeyRequest request) {
-        User currentUser = SecurityUtils.getCurrentUser();
+        User currentUser = SecurityUtils.getCurrentUserReference();
         ApiKeyResponse response = apiKeyService.createApiKey(currentUser, request);
         return ResponseEntity.ok(response);
     }
 
     @GetMapping("/me/api-keys")
     public ResponseEntity<List<ApiKeyResponse>> listApiKeys() {
-        User currentUser = SecurityUtils.getCurrentUser();
+        CurrentUser currentUser = SecurityUtils.getCurrentPrincipal();
         List<ApiKeyResponse> response = apiKeyService.getUserApiKeys(currentUser);
         return ResponseEntity.ok(response);
     }
 
     @DeleteMapping("/me/api-keys/{id}")
     public ResponseEntity<Void> deleteApiKey(@PathVariable Long id) {
-        User currentUser = SecurityUtils.getCurrentUser();
+        CurrentUser currentUser = SecurityUtils.getCurrentPrincipal();
         apiKeyService.deleteApiKey(currentUser, id);
         return ResponseEntity.ok().build();
     }
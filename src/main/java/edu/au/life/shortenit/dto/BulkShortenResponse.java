@@ -0,0 +1,40 @@
+package edu.au.life.shortenit.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkShortenResponse {
+
+    private int total;
+    private int created;
+    private int failed;
+    private List<Item> results;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+        private int index; // position in the request list or NDJSON line number, from 0
+        private UrlResponse url; // set when created
+        private String error; // set when failed
+    }
+
+    public static BulkShortenResponse of(List<Item> results) {
+        int created = (int) results.stream().filter(item -> item.getUrl() != null).count();
+        return BulkShortenResponse.builder()
+                .total(results.size())
+                .created(created)
+                .failed(results.size() - created)
+                .results(results)
+                .build();
+    }
+}
@@ -0,0 +1,10 @@
+package edu.au.life.shortenit.dto;
+
+/**
+ * Projection for grouped click counts by city and country, as dictionary ids.
+ */
+public interface CityCount {
+    Integer getCityId();
+    Integer getCountryId();
+    Long getClicks();
+}
@@ -0,0 +1,13 @@
+package edu.au.life.shortenit.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Raw click captured on the redirect path, before geo/user-agent enrichment.
+ */
+public record ClickEvent(Long urlId,
+                         LocalDateTime clickedAt,
+                         String ipAddress,
+                         String userAgent,
+                         String referrer) {
+}
@@ -0,0 +1,9 @@
+package edu.au.life.shortenit.dto;
+
+/**
+ * Projection for grouped click counts: one row per dimension value.
+ */
+public interface DimensionCount {
+    String getLabel();
+    Long getClicks();
+}
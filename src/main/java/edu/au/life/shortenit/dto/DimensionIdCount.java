@@ -0,0 +1,9 @@
+package edu.au.life.shortenit.dto;
+
+/**
+ * Projection for click counts grouped by a dictionary-encoded dimension; null when the click had no value.
+ */
+public interface DimensionIdCount {
+    Integer getValueId();
+    Long getClicks();
+}
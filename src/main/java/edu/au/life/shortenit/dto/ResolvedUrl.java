@@ -0,0 +1,17 @@
+package edu.au.life.shortenit.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Immutable view of a short URL holding only what the redirect path needs.
+ */
+public record ResolvedUrl(Long id, String originalUrl, Boolean active, LocalDateTime expiresAt) {
+
+    public boolean isActive() {
+        return !Boolean.FALSE.equals(active);
+    }
+
+    public boolean isExpired() {
+        return expiresAt != null && expiresAt.isBefore(LocalDateTime.now());
+    }
+}
@@ -0,0 +1,11 @@
+package edu.au.life.shortenit.dto;
+
+/**
+ * Projection for per-URL click totals summed from hourly rollups.
+ */
+public interface UrlClickTotals {
+    Long getUrlId();
+    Long getTotalClicks();
+    Long getClicksToday();
+    Long getClicksThisWeek();
+}
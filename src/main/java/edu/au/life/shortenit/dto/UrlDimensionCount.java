@@ -0,0 +1,13 @@
+package edu.au.life.shortenit.dto;
+
+import edu.au.life.shortenit.entity.UrlClickRollup;
+
+/**
+ * Projection for per-URL click counts grouped by one rollup dimension value.
+ */
+public interface UrlDimensionCount {
+    Long getUrlId();
+    UrlClickRollup.Dimension getDimension();
+    String getLabel();
+    Long getClicks();
+}
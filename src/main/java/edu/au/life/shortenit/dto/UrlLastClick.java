@@ -0,0 +1,11 @@
+package edu.au.life.shortenit.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Projection for the most recent click time of a URL.
+ */
+public interface UrlLastClick {
+    Long getUrlId();
+    LocalDateTime getLastClick();
+}
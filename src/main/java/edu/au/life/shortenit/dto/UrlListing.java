@@ -0,0 +1,23 @@
+package edu.au.life.shortenit.dto;
+
+import edu.au.life.shortenit.entity.Url;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only row for URL listings, selected together with the owner in one query.
+ * Not a managed entity, so listings carry no persistence-context or dirty-checking cost.
+ */
+public record UrlListing(Long id,
+                         String originalUrl,
+                         String code,
+                         String title,
+                         LocalDateTime createdAt,
+                         LocalDateTime expiresAt,
+                         Long clickCount,
+                         Boolean isActive,
+                         Url.CodeType codeType,
+                         Long ownerId,
+                         String ownerName,
+                         String ownerEmail) {
+}
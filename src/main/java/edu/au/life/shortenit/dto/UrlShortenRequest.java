@@ -15,6 +15,7 @@ public class UrlShortenRequest {
 
     @NotBlank(message = "URL cannot be empty")
     @Pattern(regexp = "^(http|https)://.*", message = "URL must start with http:// or https://")
+    @Size(max = 2048, message = "URL must be at most 2048 characters")
     private String originalUrl;
 
     @NotBlank(message = "Title is required")
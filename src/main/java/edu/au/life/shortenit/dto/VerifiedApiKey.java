@@ -0,0 +1,13 @@
+package edu.au.life.shortenit.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * An API key that has passed verification, with the owner details needed to authenticate the request.
+ */
+public record VerifiedApiKey(Long keyId, Long userId, String email, String role, LocalDateTime expiresAt) {
+
+    public boolean isExpired() {
+        return expiresAt != null && expiresAt.isBefore(LocalDateTime.now());
+    }
+}
@@ -0,0 +1,13 @@
+package edu.au.life.shortenit.dto;
+
+import java.time.Instant;
+
+/**
+ * Claims of a JWT whose signature and expiry have been checked.
+ */
+public record VerifiedToken(Long userId, String email, String role, Instant expiresAt) {
+
+    public boolean isExpired() {
+        return expiresAt != null && !expiresAt.isAfter(Instant.now());
+    }
+}
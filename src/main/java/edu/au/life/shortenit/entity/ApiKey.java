@@ -22,9 +22,15 @@ public class ApiKey {
     @JoinColumn(name = "user_id", nullable = false)
     private User user; // owner of this api key
 
+    // HMAC-SHA256 digest of the full key; legacy rows (lookupId == null) hold a BCrypt hash until first use
     @Column(nullable = false, unique = true)
     private String keyHash;
 
+    // Non-secret identifier taken from the key itself, used to find the row without scanning.
+    // Null for legacy keys, whose every character is secret; those are found by keyHash instead.
+    @Column(unique = true, length = 32)
+    private String lookupId;
+
     @Column(nullable = false, length = 100)
     private String name;
 
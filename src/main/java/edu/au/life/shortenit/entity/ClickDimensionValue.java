@@ -0,0 +1,31 @@
+package edu.au.life.shortenit.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Dictionary of the strings that click rows reference by id: countries, cities, user agents,
+ * device types, browsers, operating systems and referrers share one id space.
+ */
+@Entity
+@Table(name = "click_dimension_values",
+        uniqueConstraints = @UniqueConstraint(name = "uk_click_dimension_values_value", columnNames = "value"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClickDimensionValue {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(nullable = false, length = 500)
+    private String value;
+
+    // Stamped whenever a node resolves the value to an id; recent values are never pruned
+    private LocalDateTime lastUsedAt;
+}
@@ -13,7 +13,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "urls")
+@Table(name = "urls", indexes = @Index(name = "idx_urls_user_created_at_id", columnList = "user_id, created_at, id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -8,7 +8,11 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name="url_clicks")
+@Table(name="url_clicks", indexes = {
+        @Index(name = "idx_url_clicks_url_clicked_at", columnList = "url_id, clicked_at"),
+        // Compaction deletes by clicked_at alone
+        @Index(name = "idx_url_clicks_clicked_at", columnList = "clicked_at")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -27,30 +31,55 @@ public class UrlClick {
     @Column(length = 45)
     private String ipAddress;
 
-    @Column(length = 100)
+    // Dimension strings are stored as ids into click_dimension_values, see ClickDimensionDictionary
+    @Column(name = "country_id")
+    private Integer countryId;
+
+    @Column(name = "city_id")
+    private Integer cityId;
+
+    @Column(name = "user_agent_id")
+    private Integer userAgentId;
+
+    @Column(name = "device_type_id")
+    private Integer deviceTypeId;
+
+    @Column(name = "browser_id")
+    private Integer browserId;
+
+    @Column(name = "operating_system_id")
+    private Integer operatingSystemId;
+
+    @Column(name = "referrer_id")
+    private Integer referrerId;
+
+    // Decoded values: set on the write path, filled from the dictionary on reads that need them
+    @Transient
     private String country;
 
-    @Column(length = 100)
+    @Transient
     private String city;
 
-    @Column(length = 500)
+    @Transient
     private String userAgent;
 
-    @Column(length = 50)
+    @Transient
     private String deviceType;
 
-    @Column(length = 100)
+    @Transient
     private String browser;
 
-    @Column(length = 100)
+    @Transient
     private String operatingSystem;
 
-    @Column(length = 500)
+    @Transient
     private String referrer;
 
     @PrePersist
     protected void onCreate() {
-        clickedAt =  LocalDateTime.now();
+        if (clickedAt == null) {
+            clickedAt = LocalDateTime.now();
+        }
     }
 
 }
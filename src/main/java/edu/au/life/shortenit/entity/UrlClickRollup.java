@@ -0,0 +1,49 @@
+package edu.au.life.shortenit.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.LocalDateTime;
+
+/**
+ * Per-URL, per-hour click counter for one analytics dimension value.
+ * TOTAL rows (empty value) carry the bucket's overall click count.
+ */
+@Entity
+@Table(name = "url_click_rollups",
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_url_click_rollups_bucket",
+                columnNames = {"url_id", "bucket_start", "dimension", "dimension_value"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UrlClickRollup {
+
+    public enum Dimension {TOTAL, COUNTRY, CITY, DEVICE, BROWSER, REFERRER}
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "url_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Url url;
+
+    @Column(nullable = false)
+    private LocalDateTime bucketStart;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Dimension dimension;
+
+    @Column(nullable = false, length = 600)
+    private String dimensionValue;
+
+    @Column(nullable = false)
+    private Long clicks;
+}
@@ -21,6 +21,8 @@ public interface ApiKeyRepository extends JpaRepository<ApiKey, Long> {
 
     List<ApiKey> findByUserOrderByCreatedAtDesc(User user);
 
+    List<ApiKey> findByUserIdOrderByCreatedAtDesc(Long userId);
+
     @Query("SELECT k FROM ApiKey k WHERE k.user = :user AND " +
             "(k.expiresAt IS NULL OR k.expiresAt > :now)")
     List<ApiKey> findActiveByUser(@Param("user") User user, @Param("now") LocalDateTime now);
@@ -36,4 +38,18 @@ public interface ApiKeyRepository extends JpaRepository<ApiKey, Long> {
     @Query("SELECT k FROM ApiKey k JOIN FETCH k.user")
     List<ApiKey> findAllWithUser();
 
+    @Query("SELECT k FROM ApiKey k JOIN FETCH k.user WHERE k.lookupId = :lookupId")
+    Optional<ApiKey> findByLookupIdWithUser(@Param("lookupId") String lookupId);
+
+    // Keys created before lookup ids existed whose BCrypt hash was already replaced by an HMAC digest
+    @Query("SELECT k FROM ApiKey k JOIN FETCH k.user WHERE k.lookupId IS NULL AND k.keyHash = :keyHash")
+    Optional<ApiKey> findLegacyByKeyHashWithUser(@Param("keyHash") String keyHash);
+
+    // Keys created before lookup ids existed that still hold a BCrypt hash; shrinks as they are used
+    @Query("SELECT k FROM ApiKey k JOIN FETCH k.user WHERE k.lookupId IS NULL AND k.keyHash LIKE '$2%'")
+    List<ApiKey> findLegacyBcryptWithUser();
+
+    @Query("SELECT COUNT(k) FROM ApiKey k WHERE k.lookupId IS NULL AND k.keyHash LIKE '$2%'")
+    long countLegacyBcrypt();
+
 }
@@ -1,20 +1,27 @@
 package edu.au.life.shortenit.repository;
 
+import edu.au.life.shortenit.dto.CityCount;
+import edu.au.life.shortenit.dto.DimensionCount;
+import edu.au.life.shortenit.dto.DimensionIdCount;
+import edu.au.life.shortenit.dto.UrlLastClick;
 import edu.au.life.shortenit.entity.Url;
 import edu.au.life.shortenit.entity.UrlClick;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 
 @Repository
 public interface UrlClickRepository extends JpaRepository<UrlClick, Long> {
     List<UrlClick> findByUrl(Url url);
     List<UrlClick> findByUrlOrderByClickedAtDesc(Url url);
+    List<UrlClick> findTop10ByUrlOrderByClickedAtDesc(Url url);
+    List<UrlClick> findTop10ByUrlIdOrderByClickedAtDesc(Long urlId);
     List<UrlClick> findByUrlCode(String code);
 
     @Query("SELECT COUNT(c) FROM UrlClick c WHERE c.url.id = :urlId")
@@ -23,26 +30,70 @@ public interface UrlClickRepository extends JpaRepository<UrlClick, Long> {
     @Query("SELECT MAX(c.clickedAt) FROM UrlClick c WHERE c.url.id = :urlId")
     LocalDateTime findLastClickTimeByUrlId(@Param("urlId") Long urlId);
 
-    @Query("SELECT c.country FROM UrlClick c WHERE c.url.id = :urlId " +
-            "GROUP BY c.country ORDER BY COUNT(c) DESC")
-    List<String> findTopCountryByUrlId(@Param("urlId") Long urlId);
+    List<UrlClick> findTop10ByUrlAndClickedAtBetweenOrderByClickedAtDesc(Url url, LocalDateTime start, LocalDateTime end);
 
-    @Query("SELECT c.city FROM UrlClick c WHERE c.url.id = :urlId " +
-            "GROUP BY c.city ORDER BY COUNT(c) DESC")
-    List<String> findTopCityByUrlId(@Param("urlId") Long urlId);
+    @Query("SELECT COUNT(c) FROM UrlClick c WHERE c.url.id = :urlId AND c.clickedAt BETWEEN :start AND :end")
+    long countByUrlIdInRange(@Param("urlId") Long urlId,
+                             @Param("start") LocalDateTime start,
+                             @Param("end") LocalDateTime end);
 
-    @Query("SELECT c.browser FROM UrlClick c WHERE c.url.id = :urlId " +
-            "GROUP BY c.browser ORDER BY COUNT(c) DESC")
-    List<String> findTopBrowserByUrlId(@Param("urlId") Long urlId);
+    @Query(value = "SELECT TO_CHAR(c.clicked_at, 'YYYY-MM-DD') AS label, COUNT(*) AS clicks FROM url_clicks c " +
+            "WHERE c.url_id = :urlId AND c.clicked_at BETWEEN :start AND :end " +
+            "GROUP BY TO_CHAR(c.clicked_at, 'YYYY-MM-DD')", nativeQuery = true)
+    List<DimensionCount> countByDateInRange(@Param("urlId") Long urlId,
+                                            @Param("start") LocalDateTime start,
+                                            @Param("end") LocalDateTime end);
 
-    @Query("SELECT c.deviceType FROM UrlClick c WHERE c.url.id = :urlId " +
-            "GROUP BY c.deviceType ORDER BY COUNT(c) DESC")
-    List<String> findTopDeviceByUrlId(@Param("urlId") Long urlId);
+    @Query(value = "SELECT TO_CHAR(c.clicked_at, 'FMHH24') AS label, COUNT(*) AS clicks FROM url_clicks c " +
+            "WHERE c.url_id = :urlId AND c.clicked_at BETWEEN :start AND :end " +
+            "GROUP BY TO_CHAR(c.clicked_at, 'FMHH24')", nativeQuery = true)
+    List<DimensionCount> countByHourInRange(@Param("urlId") Long urlId,
+                                            @Param("start") LocalDateTime start,
+                                            @Param("end") LocalDateTime end);
 
-    // Efficient batch query - get analytics for multiple URLs at once
-    @Query("SELECT c.url.id as urlId, COUNT(c) as clickCount, " +
-            "MAX(c.clickedAt) as lastClick " +
-            "FROM UrlClick c WHERE c.url.id IN :urlIds " +
-            "GROUP BY c.url.id")
-    List<Map<String, Object>> findAnalyticsSummaryForUrls(@Param("urlIds") List<Long> urlIds);
+    @Query("SELECT c.countryId AS valueId, COUNT(c) AS clicks FROM UrlClick c " +
+            "WHERE c.url.id = :urlId AND c.clickedAt BETWEEN :start AND :end AND c.countryId IS NOT NULL " +
+            "GROUP BY c.countryId ORDER BY COUNT(c) DESC")
+    List<DimensionIdCount> findTopCountries(@Param("urlId") Long urlId,
+                                          @Param("start") LocalDateTime start,
+                                          @Param("end") LocalDateTime end,
+                                          Limit limit);
+
+    @Query("SELECT c.cityId AS cityId, c.countryId AS countryId, COUNT(c) AS clicks FROM UrlClick c " +
+            "WHERE c.url.id = :urlId AND c.clickedAt BETWEEN :start AND :end AND c.cityId IS NOT NULL " +
+            "GROUP BY c.cityId, c.countryId ORDER BY COUNT(c) DESC")
+    List<CityCount> findTopCities(@Param("urlId") Long urlId,
+                                  @Param("start") LocalDateTime start,
+                                  @Param("end") LocalDateTime end,
+                                  Limit limit);
+
+    @Query("SELECT c.browserId AS valueId, COUNT(c) AS clicks FROM UrlClick c " +
+            "WHERE c.url.id = :urlId AND c.clickedAt BETWEEN :start AND :end AND c.browserId IS NOT NULL " +
+            "GROUP BY c.browserId ORDER BY COUNT(c) DESC")
+    List<DimensionIdCount> findTopBrowsers(@Param("urlId") Long urlId,
+                                         @Param("start") LocalDateTime start,
+                                         @Param("end") LocalDateTime end,
+                                         Limit limit);
+
+    @Query("SELECT c.deviceTypeId AS valueId, COUNT(c) AS clicks FROM UrlClick c " +
+            "WHERE c.url.id = :urlId AND c.clickedAt BETWEEN :start AND :end " +
+            "GROUP BY c.deviceTypeId ORDER BY COUNT(c) DESC")
+    List<DimensionIdCount> findTopDevices(@Param("urlId") Long urlId,
+                                        @Param("start") LocalDateTime start,
+                                        @Param("end") LocalDateTime end,
+                                        Limit limit);
+
+    // Blank referrers are stored as null, so no separate empty-string check is needed
+    @Query("SELECT c.referrerId AS valueId, COUNT(c) AS clicks FROM UrlClick c " +
+            "WHERE c.url.id = :urlId AND c.clickedAt BETWEEN :start AND :end AND c.referrerId IS NOT NULL " +
+            "GROUP BY c.referrerId ORDER BY COUNT(c) DESC")
+    List<DimensionIdCount> findTopReferrers(@Param("urlId") Long urlId,
+                                          @Param("start") LocalDateTime start,
+                                          @Param("end") LocalDateTime end,
+                                          Limit limit);
+
+    // Efficient batch query - last click for multiple URLs at once; each subquery is an index probe
+    @Query("SELECT u.id AS urlId, (SELECT MAX(c.clickedAt) FROM UrlClick c WHERE c.url = u) AS lastClick " +
+            "FROM Url u WHERE u.id IN :urlIds")
+    List<UrlLastClick> findLastClickForUrls(@Param("urlIds") Collection<Long> urlIds);
 }
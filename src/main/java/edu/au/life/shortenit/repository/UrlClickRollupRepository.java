@@ -0,0 +1,41 @@
+package edu.au.life.shortenit.repository;
+
+import edu.au.life.shortenit.dto.UrlClickTotals;
+import edu.au.life.shortenit.dto.UrlDimensionCount;
+import edu.au.life.shortenit.entity.UrlClickRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface UrlClickRollupRepository extends JpaRepository<UrlClickRollup, Long> {
+
+    @Query("SELECT r FROM UrlClickRollup r WHERE r.url.id = :urlId")
+    List<UrlClickRollup> findByUrlId(@Param("urlId") Long urlId);
+
+    @Query("SELECT r FROM UrlClickRollup r WHERE r.url.id = :urlId AND r.bucketStart BETWEEN :start AND :end")
+    List<UrlClickRollup> findByUrlIdInRange(@Param("urlId") Long urlId,
+                                            @Param("start") LocalDateTime start,
+                                            @Param("end") LocalDateTime end);
+
+    @Query("SELECT r.url.id AS urlId, SUM(r.clicks) AS totalClicks, " +
+            "SUM(CASE WHEN r.bucketStart >= :startOfToday THEN r.clicks ELSE 0 END) AS clicksToday, " +
+            "SUM(CASE WHEN r.bucketStart >= :weekStart THEN r.clicks ELSE 0 END) AS clicksThisWeek " +
+            "FROM UrlClickRollup r WHERE r.url.id IN :urlIds AND r.dimension = :total " +
+            "GROUP BY r.url.id")
+    List<UrlClickTotals> sumTotalsForUrls(@Param("urlIds") Collection<Long> urlIds,
+                                          @Param("startOfToday") LocalDateTime startOfToday,
+                                          @Param("weekStart") LocalDateTime weekStart,
+                                          @Param("total") UrlClickRollup.Dimension total);
+
+    @Query("SELECT r.url.id AS urlId, r.dimension AS dimension, r.dimensionValue AS label, SUM(r.clicks) AS clicks " +
+            "FROM UrlClickRollup r WHERE r.url.id IN :urlIds AND r.dimension IN :dimensions " +
+            "GROUP BY r.url.id, r.dimension, r.dimensionValue")
+    List<UrlDimensionCount> sumByDimensionForUrls(@Param("urlIds") Collection<Long> urlIds,
+                                                  @Param("dimensions") Collection<UrlClickRollup.Dimension> dimensions);
+}
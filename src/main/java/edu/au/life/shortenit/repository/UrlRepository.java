@@ -1,7 +1,10 @@
 package edu.au.life.shortenit.repository;
 
+import edu.au.life.shortenit.dto.ResolvedUrl;
+import edu.au.life.shortenit.dto.UrlListing;
 import edu.au.life.shortenit.entity.Url;
 import edu.au.life.shortenit.entity.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -10,18 +13,47 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UrlRepository extends JpaRepository<Url, Long> {
 
+    String LISTING_SELECT = "SELECT new edu.au.life.shortenit.dto.UrlListing(" +
+            "u.id, u.originalUrl, u.code, u.title, u.createdAt, u.expiresAt, u.clickCount, u.isActive, u.codeType, " +
+            "o.id, o.name, o.email) FROM Url u JOIN u.user o ";
+
     Optional<Url> findByCode(String code);
 
+    @Query("SELECT new edu.au.life.shortenit.dto.ResolvedUrl(u.id, u.originalUrl, u.isActive, u.expiresAt) " +
+            "FROM Url u WHERE u.code = :code")
+    Optional<ResolvedUrl> findResolvedByCode(@Param("code") String code);
+
     List<Url> findByUserOrderByCreatedAtDesc(User user);
 
+    // Keyset pages ordered by (createdAt DESC, id DESC), served by idx_urls_user_created_at_id
+    @Query(LISTING_SELECT + "WHERE o.id = :userId ORDER BY u.createdAt DESC, u.id DESC")
+    List<UrlListing> findFirstListingPageByUserId(@Param("userId") Long userId, Limit limit);
+
+    @Query(LISTING_SELECT + "WHERE o.id = :userId AND " +
+            "(u.createdAt < :createdAt OR (u.createdAt = :createdAt AND u.id < :id)) " +
+            "ORDER BY u.createdAt DESC, u.id DESC")
+    List<UrlListing> findListingPageByUserIdBefore(@Param("userId") Long userId,
+                                                   @Param("createdAt") LocalDateTime createdAt,
+                                                   @Param("id") Long id,
+                                                   Limit limit);
+
+    @Query(value = LISTING_SELECT + "WHERE o.id = :userId",
+            countQuery = "SELECT COUNT(u) FROM Url u WHERE u.user.id = :userId")
+    Page<UrlListing> findListingsByUserId(@Param("userId") Long userId, Pageable pageable);
+
     boolean existsByCode(String code);
 
+    @Query("SELECT u.code FROM Url u WHERE u.code IN :codes")
+    List<String> findExistingCodes(@Param("codes") Collection<String> codes);
+
     Page<Url> findAll(Pageable pageable);
 
     @Query("SELECT u FROM Url u ORDER BY u.createdAt DESC")
@@ -37,6 +69,7 @@ public interface UrlRepository extends JpaRepository<Url, Long> {
 
     Page<Url> findByUser(User user, Pageable pageable);
 
+
     @Query("SELECT u FROM Url u WHERE u.user = :user ORDER BY u.createdAt DESC")
     Page<Url> findByUserOrderByCreatedAtDesc(@Param("user") User user, Pageable pageable);
 
@@ -1,8 +1,7 @@
 package edu.au.life.shortenit.security;
 
-import edu.au.life.shortenit.entity.ApiKey;
-import edu.au.life.shortenit.entity.User;
-import edu.au.life.shortenit.repository.ApiKeyRepository;
+import edu.au.life.shortenit.dto.VerifiedApiKey;
+import edu.au.life.shortenit.service.ApiKeyService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -12,43 +11,32 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.time.LocalDateTime;
 import java.util.Collections;
-import java.util.List;
 
 /**
- * ApiKeyAuthenticationFilter - FINAL WORKING VERSION
- * Uses Spring's PasswordEncoder instead of BCrypt directly
+ * ApiKeyAuthenticationFilter
+ * Resolves the X-API-Key header through ApiKeyService (indexed lookup + HMAC check)
  */
 @Slf4j
 @Component
 public class ApiKeyAuthenticationFilter extends OncePerRequestFilter {
 
     private final ApplicationContext applicationContext;
-    private ApiKeyRepository apiKeyRepository;
-    private PasswordEncoder passwordEncoder;
+    private ApiKeyService apiKeyService;
 
     public ApiKeyAuthenticationFilter(ApplicationContext applicationContext) {
         this.applicationContext = applicationContext;
     }
 
-    private ApiKeyRepository getApiKeyRepository() {
-        if (apiKeyRepository == null) {
-            apiKeyRepository = applicationContext.getBean(ApiKeyRepository.class);
+    private ApiKeyService getApiKeyService() {
+        if (apiKeyService == null) {
+            apiKeyService = applicationContext.getBean(ApiKeyService.class);
         }
-        return apiKeyRepository;
-    }
-
-    private PasswordEncoder getPasswordEncoder() {
-        if (passwordEncoder == null) {
-            passwordEncoder = applicationContext.getBean(PasswordEncoder.class);
-        }
-        return passwordEncoder;
+        return apiKeyService;
     }
 
     @Override
@@ -88,51 +76,36 @@ public class ApiKeyAuthenticationFilter extends OncePerRequestFilter {
         try {
             log.debug("Checking API key against database...");
 
-            // Get all API keys and check with PasswordEncoder
-            List<ApiKey> allKeys = getApiKeyRepository().findAllWithUser();
-            log.debug("Found {} API keys in database", allKeys.size());
-
-            ApiKey matchedKey = null;
-
-            for (ApiKey key : allKeys) {
-                boolean matches = getPasswordEncoder().matches(apiKeyHeader, key.getKeyHash());
-                if (matches) {
-                    matchedKey = key;
-                    break;
-                }
-            }
+            // Cached verification, or a direct lookup by the key's lookup id plus a single HMAC check
+            VerifiedApiKey matchedKey = getApiKeyService().authenticate(apiKeyHeader).orElse(null);
 
             if (matchedKey != null) {
-                log.debug("API key validated for user ID: {}", matchedKey.getUser().getId());
+                log.debug("API key validated for user ID: {}", matchedKey.userId());
 
                 // Check expiration
-                if (matchedKey.getExpiresAt() != null &&
-                        matchedKey.getExpiresAt().isBefore(LocalDateTime.now())) {
+                if (matchedKey.isExpired()) {
                     log.debug("API key expired");
                     filterChain.doFilter(request, response);
                     return;
                 }
 
-                User user = matchedKey.getUser();
-
                 // Create authentication token
                 UsernamePasswordAuthenticationToken authToken =
                         new UsernamePasswordAuthenticationToken(
-                                user.getEmail(),
+                                matchedKey.email(),
                                 null,
-                                Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + user.getRole().name()))
+                                Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + matchedKey.role()))
                         );
 
                 authToken.setDetails(new JwtAuthenticationFilter.UserPrincipal(
-                        user.getId(), user.getEmail(), user.getRole().name()));
+                        matchedKey.userId(), matchedKey.email(), matchedKey.role()));
 
                 SecurityContextHolder.getContext().setAuthentication(authToken);
 
                 log.debug("Authentication set in SecurityContext");
 
                 // Update last used
-                matchedKey.setLastUsedAt(LocalDateTime.now());
-                getApiKeyRepository().save(matchedKey);
+                getApiKeyService().recordUsage(matchedKey.keyId());
             } else {
                 log.debug("API key not found in database");
             }
@@ -0,0 +1,21 @@
+package edu.au.life.shortenit.security;
+
+import edu.au.life.shortenit.entity.User;
+
+/**
+ * The authenticated caller as carried by the JWT or API key, without a users-table lookup.
+ * Enough for ownership and role checks; load the {@link User} only when it must be mutated.
+ */
+public record CurrentUser(Long id, String email, String role) {
+
+    public boolean isAdmin() {
+        return User.Role.ADMIN.name().equals(role);
+    }
+
+    /**
+     * Owners and admins may access a resource.
+     */
+    public boolean canAccess(Long ownerId) {
+        return id.equals(ownerId) || isAdmin();
+    }
+}
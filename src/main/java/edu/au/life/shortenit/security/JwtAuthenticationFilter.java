@@ -1,5 +1,6 @@
 package edu.au.life.shortenit.security;
 
+import edu.au.life.shortenit.dto.VerifiedToken;
 import edu.au.life.shortenit.service.JwtService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -60,32 +61,27 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         try {
-            // Extract token
+            // Extract token and verify it once; signature and expiry are checked by verify()
             final String jwt = authHeader.substring(7);
-            final String email = getJwtService().extractEmail(jwt);
-            final Long userId = getJwtService().extractUserId(jwt);
-            final String role = getJwtService().extractRole(jwt);
+            final VerifiedToken token = getJwtService().verify(jwt);
+            final String email = token.email();
 
             // If user is not already authenticated
             if (email != null && SecurityContextHolder.getContext().getAuthentication() == null) {
 
-                // Validate token
-                if (getJwtService().validateToken(jwt, email)) {
+                // Create authentication token
+                UsernamePasswordAuthenticationToken authToken =
+                        new UsernamePasswordAuthenticationToken(
+                                email,
+                                null,
+                                Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + token.role()))
+                        );
 
-                    // Create authentication token
-                    UsernamePasswordAuthenticationToken authToken =
-                            new UsernamePasswordAuthenticationToken(
-                                    email,
-                                    null,
-                                    Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + role))
-                            );
+                // Set user ID as principal detail
+                authToken.setDetails(new UserPrincipal(token.userId(), email, token.role()));
 
-                    // Set user ID as principal detail
-                    authToken.setDetails(new UserPrincipal(userId, email, role));
-
-                    // Set authentication in context
-                    SecurityContextHolder.getContext().setAuthentication(authToken);
-                }
+                // Set authentication in context
+                SecurityContextHolder.getContext().setAuthentication(authToken);
             }
         } catch (Exception e) {
             // Log error and continue filter chain
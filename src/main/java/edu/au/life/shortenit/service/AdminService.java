@@ -18,10 +18,17 @@ public class AdminService {
 
     private final UserRepository userRepository;
     private final ProtectedAdminConfig protectedAdminConfig;
+    private final UrlResolutionCache urlResolutionCache;
+    private final VerifiedApiKeyCache verifiedApiKeyCache;
 
-    public AdminService(UserRepository userRepository, ProtectedAdminConfig protectedAdminConfig) {
+    public AdminService(UserRepository userRepository,
+                        ProtectedAdminConfig protectedAdminConfig,
+                        UrlResolutionCache urlResolutionCache,
+                        VerifiedApiKeyCache verifiedApiKeyCache) {
         this.userRepository = userRepository;
         this.protectedAdminConfig = protectedAdminConfig;
+        this.urlResolutionCache = urlResolutionCache;
+        this.verifiedApiKeyCache = verifiedApiKeyCache;
     }
 
     public boolean isProtectedAdmin(User user) {
@@ -97,6 +104,9 @@ public class AdminService {
         }
 
         userRepository.delete(target);
+        // Deleting a user cascades to their URLs; drop any cached redirects for them
+        urlResolutionCache.invalidateAll();
+        verifiedApiKeyCache.invalidateUser(targetId);
     }
 
     @Transactional
@@ -121,6 +131,8 @@ public class AdminService {
 
         target.setRole(newRole);
         User saved = userRepository.save(target);
+        // Cached API keys carry the old role
+        verifiedApiKeyCache.invalidateUser(targetId);
         return convertToResponse(saved);
     }
 
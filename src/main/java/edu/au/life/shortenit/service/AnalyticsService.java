@@ -1,132 +1,127 @@
 package edu.au.life.shortenit.service;
 
 import edu.au.life.shortenit.dto.AnalyticsResponse;
+import edu.au.life.shortenit.dto.CityCount;
+import edu.au.life.shortenit.dto.CursorPage;
+import edu.au.life.shortenit.dto.DimensionIdCount;
+import edu.au.life.shortenit.dto.UrlListing;
 import edu.au.life.shortenit.entity.Url;
 import edu.au.life.shortenit.entity.UrlClick;
-import edu.au.life.shortenit.entity.User;
+import edu.au.life.shortenit.entity.UrlClickRollup;
 import edu.au.life.shortenit.exception.UrlNotFoundException;
 import edu.au.life.shortenit.repository.UrlClickRepository;
+import edu.au.life.shortenit.repository.UrlClickRollupRepository;
 import edu.au.life.shortenit.repository.UrlRepository;
+import edu.au.life.shortenit.security.CurrentUser;
+import edu.au.life.shortenit.util.PageCursor;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
-import java.util.LinkedHashMap;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class AnalyticsService {
+    private static final Limit TOP_LIMIT = Limit.of(10);
+
     private final UrlRepository urlRepository;
     private final UrlClickRepository urlClickRepository;
+    private final UrlClickRollupRepository urlClickRollupRepository;
+    private final ClickCompactionService clickCompactionService;
+    private final ClickDimensionDictionary clickDimensionDictionary;
+
+    @Value("${app.pagination.max-page-size:100}")
+    private int maxPageSize;
 
-    public AnalyticsResponse getAnalytics(String code, User user) {
+    public AnalyticsResponse getAnalytics(String code, CurrentUser user) {
         Url url = urlRepository.findByCode(code)
                 .orElseThrow(() -> new UrlNotFoundException("Short URL not found: " + code));
 
-        if (!url.getUser().getId().equals(user.getId()) &&
-                !user.getRole().equals(User.Role.ADMIN)) {
+        if (!user.canAccess(url.getUser().getId())) {
             throw new UrlNotFoundException("Short URL not found: " + code);
         }
 
-        List<UrlClick> clicks = urlClickRepository.findByUrlOrderByClickedAtDesc(url);
-
-        return AnalyticsResponse.builder()
-                .code(url.getCode())
-                .originalUrl(url.getOriginalUrl())
-                .totalClicks(url.getClickCount())
-                .createdAt(url.getCreatedAt())
-                .clicksByDate(getClicksByDate(clicks))
-                .clicksByHour(getClicksByHour(clicks))
-                .topCountries(getTopCountries(clicks))
-                .topCities(getTopCities(clicks))
-                .deviceStats(getDeviceStats(clicks))
-                .topBrowsers(getTopBrowsers(clicks))
-                .topReferrers(getTopReferrers(clicks))
-                .recentClicks(getRecentClicks(clicks, 10))
-                .build();
+        return buildAnalyticsResponse(url);
     }
 
-    public List<AnalyticsResponse> getAllAnalytics(User user) {
-        List<Url> urls = urlRepository.findByUserOrderByCreatedAtDesc(user);
+    /**
+     * Keyset page of analytics for the user's URLs, newest first, without a total count.
+     */
+    public CursorPage<AnalyticsResponse> getAnalyticsPage(CurrentUser user, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+        Limit fetch = Limit.of(pageSize + 1);
+        List<UrlListing> urls;
+        if (cursor == null || cursor.isBlank()) {
+            urls = urlRepository.findFirstListingPageByUserId(user.id(), fetch);
+        } else {
+            PageCursor position = PageCursor.decode(cursor);
+            urls = urlRepository.findListingPageByUserIdBefore(user.id(), position.createdAt(), position.id(), fetch);
+        }
 
-        return urls.stream()
-                .map(url -> buildAnalyticsResponse(url))
-                .collect(Collectors.toList());
+        String nextCursor = null;
+        if (urls.size() > pageSize) {
+            urls = urls.subList(0, pageSize);
+            UrlListing last = urls.get(pageSize - 1);
+            nextCursor = new PageCursor(last.createdAt(), last.id()).encode();
+        }
+        return new CursorPage<>(urls.stream().map(this::buildAnalyticsResponse).collect(Collectors.toList()), nextCursor);
     }
 
-    public Page<AnalyticsResponse> getAllAnalyticsPaginated(User user, Pageable pageable) {
-        Page<Url> urlPage = urlRepository.findByUser(user, pageable);
+    public Page<AnalyticsResponse> getAllAnalyticsPaginated(CurrentUser user, Pageable pageable) {
+        if (pageable.getPageSize() > maxPageSize) {
+            pageable = PageRequest.of(pageable.getPageNumber(), maxPageSize, pageable.getSort());
+        }
+        Page<UrlListing> urlPage = urlRepository.findListingsByUserId(user.id(), pageable);
 
         return urlPage.map(this::buildAnalyticsResponse);
     }
 
     private AnalyticsResponse buildAnalyticsResponse(Url url) {
-        List<UrlClick> clicks = urlClickRepository.findByUrlOrderByClickedAtDesc(url);
-
-        return AnalyticsResponse.builder()
-                .code(url.getCode())
-                .originalUrl(url.getOriginalUrl())
-                .totalClicks(url.getClickCount())
-                .createdAt(url.getCreatedAt())
-                .clicksByDate(getClicksByDate(clicks))
-                .clicksByHour(getClicksByHour(clicks))
-                .topCountries(getTopCountries(clicks))
-                .topCities(getTopCities(clicks))
-                .deviceStats(getDeviceStats(clicks))
-                .topBrowsers(getTopBrowsers(clicks))
-                .topReferrers(getTopReferrers(clicks))
-                .recentClicks(getRecentClicks(clicks, 10))
-                .build();
-    }
-
-
-    private Map<String, Long> getClicksByDate(List<UrlClick> clicks) {
-        return clicks.stream()
-                .collect(Collectors.groupingBy(
-                        click -> click.getClickedAt().toLocalDate().toString(),
-                        Collectors.counting()
-                ))
-                .entrySet().stream()
-                .sorted(Map.Entry.comparingByKey())
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (e1, e2) -> e1,
-                        LinkedHashMap::new
-                ));
+        return buildAnalyticsResponse(url.getId(), url.getCode(), url.getOriginalUrl(), url.getClickCount(), url.getCreatedAt());
     }
 
-    private Map<String, Long> getClicksByHour(List<UrlClick> clicks) {
-        return clicks.stream()
-                .collect(Collectors.groupingBy(
-                        click -> String.valueOf(click.getClickedAt().getHour()),
-                        Collectors.counting()
-                ))
-                .entrySet().stream()
-                .sorted(Map.Entry.comparingByKey())
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (e1, e2) -> e1,
-                        LinkedHashMap::new
-                ));
+    private AnalyticsResponse buildAnalyticsResponse(UrlListing url) {
+        return buildAnalyticsResponse(url.id(), url.code(), url.originalUrl(), url.clickCount(), url.createdAt());
     }
 
-    private List<AnalyticsResponse.CountryStats> getTopCountries(List<UrlClick> clicks) {
-        long totalClicks = clicks.size();
+    // Built from hourly rollups, so cost scales with the number of buckets rather than clicks
+    private AnalyticsResponse buildAnalyticsResponse(Long urlId, String code, String originalUrl,
+                                                     Long clickCount, LocalDateTime createdAt) {
+        ClickCounts counts = new ClickCounts();
+        urlClickRollupRepository.findByUrlId(urlId).forEach(counts::add);
 
-        Map<String, Long> countryMap = clicks.stream()
-                .filter(click -> click.getCountry() != null)
-                .collect(Collectors.groupingBy(
-                        UrlClick::getCountry,
-                        Collectors.counting()
-                ));
+        return AnalyticsResponse.builder()
+                .code(code)
+                .originalUrl(originalUrl)
+                .totalClicks(clickCount)
+                .createdAt(createdAt)
+                .clicksByDate(counts.byDate)
+                .clicksByHour(counts.byHour)
+                .topCountries(toCountryStats(counts.get(UrlClickRollup.Dimension.COUNTRY), counts.total))
+                .topCities(toCityStats(counts.get(UrlClickRollup.Dimension.CITY), counts.total))
+                .deviceStats(toDeviceStats(counts.get(UrlClickRollup.Dimension.DEVICE), counts.total))
+                .topBrowsers(toBrowserStats(counts.get(UrlClickRollup.Dimension.BROWSER), counts.total))
+                .topReferrers(toReferrerStats(counts.get(UrlClickRollup.Dimension.REFERRER), counts.total))
+                .recentClicks(getRecentClicks(urlClickRepository.findTop10ByUrlIdOrderByClickedAtDesc(urlId), 10))
+                .build();
+    }
 
+    private List<AnalyticsResponse.CountryStats> toCountryStats(Map<String, Long> countryMap, long totalClicks) {
         return countryMap.entrySet().stream()
                 .map(entry -> AnalyticsResponse.CountryStats.builder()
                         .country(entry.getKey())
@@ -138,16 +133,9 @@ public class AnalyticsService {
                 .collect(Collectors.toList());
     }
 
-    private List<AnalyticsResponse.CityStats> getTopCities(List<UrlClick> clicks) {
-        long totalClicks = clicks.size();
-
-        return clicks.stream()
-                .filter(click -> click.getCity() != null)
-                .collect(Collectors.groupingBy(
-                        click -> click.getCity() + "|" + click.getCountry(),
-                        Collectors.counting()
-                ))
-                .entrySet().stream()
+    // Keys are "city|country"
+    private List<AnalyticsResponse.CityStats> toCityStats(Map<String, Long> cityMap, long totalClicks) {
+        return cityMap.entrySet().stream()
                 .map(entry -> {
                     String[] parts = entry.getKey().split("\\|");
                     return AnalyticsResponse.CityStats.builder()
@@ -162,18 +150,11 @@ public class AnalyticsService {
                 .collect(Collectors.toList());
     }
 
-    private AnalyticsResponse.DeviceStats getDeviceStats(List<UrlClick> clicks) {
-        Map<String, Long> deviceMap = clicks.stream()
-                .collect(Collectors.groupingBy(
-                        click -> click.getDeviceType() != null ? click.getDeviceType() : "unknown",
-                        Collectors.counting()
-                ));
-
+    private AnalyticsResponse.DeviceStats toDeviceStats(Map<String, Long> deviceMap, long total) {
         long mobile = deviceMap.getOrDefault("mobile", 0L);
         long desktop = deviceMap.getOrDefault("desktop", 0L);
         long tablet = deviceMap.getOrDefault("tablet", 0L);
         long unknown = deviceMap.getOrDefault("unknown", 0L);
-        long total = clicks.size();
 
         return AnalyticsResponse.DeviceStats.builder()
                 .mobile(mobile)
@@ -186,16 +167,7 @@ public class AnalyticsService {
                 .build();
     }
 
-    private List<AnalyticsResponse.BrowserStats> getTopBrowsers(List<UrlClick> clicks) {
-        long totalClicks = clicks.size();
-
-        Map<String, Long> browserMap = clicks.stream()
-                .filter(click -> click.getBrowser() != null)
-                .collect(Collectors.groupingBy(
-                        UrlClick::getBrowser,
-                        Collectors.counting()
-                ));
-
+    private List<AnalyticsResponse.BrowserStats> toBrowserStats(Map<String, Long> browserMap, long totalClicks) {
         return browserMap.entrySet().stream()
                 .map(entry -> AnalyticsResponse.BrowserStats.builder()
                         .browser(entry.getKey())
@@ -207,16 +179,7 @@ public class AnalyticsService {
                 .collect(Collectors.toList());
     }
 
-    private List<AnalyticsResponse.ReferrerStats> getTopReferrers(List<UrlClick> clicks) {
-        long totalClicks = clicks.size();
-
-        Map<String, Long> referrerMap = clicks.stream()
-                .filter(click -> click.getReferrer() != null && !click.getReferrer().isEmpty())
-                .collect(Collectors.groupingBy(
-                        UrlClick::getReferrer,
-                        Collectors.counting()
-                ));
-
+    private List<AnalyticsResponse.ReferrerStats> toReferrerStats(Map<String, Long> referrerMap, long totalClicks) {
         return referrerMap.entrySet().stream()
                 .map(entry -> AnalyticsResponse.ReferrerStats.builder()
                         .referrer(entry.getKey())
@@ -229,6 +192,7 @@ public class AnalyticsService {
     }
 
     private List<AnalyticsResponse.ClickEvent> getRecentClicks(List<UrlClick> clicks, int limit) {
+        clickDimensionDictionary.decodeClicks(clicks);
         return clicks.stream()
                 .limit(limit)
                 .map(click -> AnalyticsResponse.ClickEvent.builder()
@@ -242,34 +206,125 @@ public class AnalyticsService {
                 .collect(Collectors.toList());
     }
 
-    public AnalyticsResponse getAnalyticsByDateRange(String code, LocalDateTime start, LocalDateTime end, User user) {
+    /**
+     * Counts clicks in [start, end]. Where the range reaches back before the compaction watermark
+     * only hourly rollups remain, so that part counts whole hours inside the range: a partial hour
+     * at either edge of the compacted part is left out rather than counted in full.
+     */
+    public AnalyticsResponse getAnalyticsByDateRange(String code, LocalDateTime start, LocalDateTime end, CurrentUser user) {
         Url url = urlRepository.findByCode(code)
                 .orElseThrow(() -> new UrlNotFoundException("Short URL not found: " + code));
 
         // Authorization check - user must own the URL or be admin
-        if (!url.getUser().getId().equals(user.getId()) &&
-                !user.getRole().equals(User.Role.ADMIN)) {
+        if (!user.canAccess(url.getUser().getId())) {
             throw new UrlNotFoundException("Short URL not found: " + code);
         }
 
-        List<UrlClick> allClicks = urlClickRepository.findByUrlOrderByClickedAtDesc(url);
-        List<UrlClick> filteredClicks = allClicks.stream()
-                .filter(click -> !click.getClickedAt().isBefore(start) && !click.getClickedAt().isAfter(end))
-                .collect(Collectors.toList());
+        // Filtering and grouping happen in the database; only aggregated rows come back
+        Long urlId = url.getId();
+        ClickCounts counts = new ClickCounts();
+
+        // Raw clicks before the compaction watermark are gone; that part of the range comes from hourly rollups
+        LocalDateTime compactedBefore = clickCompactionService.getCompactedBefore();
+        LocalDateTime rawStart = start;
+        boolean combined = false;
+        if (start.isBefore(compactedBefore)) {
+            // Buckets are hour-aligned, as is the watermark; keep only buckets wholly inside the range
+            LocalDateTime firstBucket = start.truncatedTo(ChronoUnit.HOURS);
+            if (firstBucket.isBefore(start)) {
+                firstBucket = firstBucket.plusHours(1);
+            }
+            LocalDateTime rollupLimit = end.isBefore(compactedBefore) ? end.plusNanos(1) : compactedBefore;
+            LocalDateTime lastBucket = rollupLimit.minusHours(1);
+            if (!firstBucket.isAfter(lastBucket)) {
+                urlClickRollupRepository.findByUrlIdInRange(urlId, firstBucket, lastBucket)
+                        .forEach(counts::add);
+            }
+            rawStart = compactedBefore;
+            combined = true;
+        }
+
+        if (!rawStart.isAfter(end)) {
+            // Per-source top-N would drop values that only make the top when both sources are summed
+            Limit limit = combined ? Limit.unlimited() : TOP_LIMIT;
+            counts.total += urlClickRepository.countByUrlIdInRange(urlId, rawStart, end);
+            urlClickRepository.countByDateInRange(urlId, rawStart, end)
+                    .forEach(row -> counts.byDate.merge(row.getLabel(), row.getClicks(), Long::sum));
+            urlClickRepository.countByHourInRange(urlId, rawStart, end)
+                    .forEach(row -> counts.byHour.merge(row.getLabel(), row.getClicks(), Long::sum));
+            List<DimensionIdCount> countries = urlClickRepository.findTopCountries(urlId, rawStart, end, limit);
+            List<CityCount> cities = urlClickRepository.findTopCities(urlId, rawStart, end, limit);
+            List<DimensionIdCount> devices = urlClickRepository.findTopDevices(urlId, rawStart, end, Limit.unlimited());
+            List<DimensionIdCount> browsers = urlClickRepository.findTopBrowsers(urlId, rawStart, end, limit);
+            List<DimensionIdCount> referrers = urlClickRepository.findTopReferrers(urlId, rawStart, end, limit);
+
+            // Grouping ran on integer ids; resolve every id in the response with one dictionary lookup
+            Set<Integer> ids = new HashSet<>();
+            Stream.of(countries, devices, browsers, referrers)
+                    .forEach(rows -> rows.forEach(row -> ids.add(row.getValueId())));
+            cities.forEach(row -> {
+                ids.add(row.getCityId());
+                ids.add(row.getCountryId());
+            });
+            ids.remove(null);
+            Map<Integer, String> values = clickDimensionDictionary.decode(ids);
+
+            countries.forEach(row -> counts.add(UrlClickRollup.Dimension.COUNTRY,
+                    values.get(row.getValueId()), row.getClicks()));
+            cities.forEach(row -> counts.add(UrlClickRollup.Dimension.CITY,
+                    values.get(row.getCityId()) + "|" + values.get(row.getCountryId()), row.getClicks()));
+            devices.forEach(row -> counts.add(UrlClickRollup.Dimension.DEVICE,
+                    values.getOrDefault(row.getValueId(), "unknown"), row.getClicks()));
+            browsers.forEach(row -> counts.add(UrlClickRollup.Dimension.BROWSER,
+                    values.get(row.getValueId()), row.getClicks()));
+            referrers.forEach(row -> counts.add(UrlClickRollup.Dimension.REFERRER,
+                    values.get(row.getValueId()), row.getClicks()));
+        }
 
         return AnalyticsResponse.builder()
                 .code(url.getCode())
                 .originalUrl(url.getOriginalUrl())
-                .totalClicks((long) filteredClicks.size())
+                .totalClicks(counts.total)
                 .createdAt(url.getCreatedAt())
-                .clicksByDate(getClicksByDate(filteredClicks))
-                .clicksByHour(getClicksByHour(filteredClicks))
-                .topCountries(getTopCountries(filteredClicks))
-                .topCities(getTopCities(filteredClicks))
-                .deviceStats(getDeviceStats(filteredClicks))
-                .topBrowsers(getTopBrowsers(filteredClicks))
-                .topReferrers(getTopReferrers(filteredClicks))
-                .recentClicks(getRecentClicks(filteredClicks, 10))
+                .clicksByDate(counts.byDate)
+                .clicksByHour(counts.byHour)
+                .topCountries(toCountryStats(counts.get(UrlClickRollup.Dimension.COUNTRY), counts.total))
+                .topCities(toCityStats(counts.get(UrlClickRollup.Dimension.CITY), counts.total))
+                .deviceStats(toDeviceStats(counts.get(UrlClickRollup.Dimension.DEVICE), counts.total))
+                .topBrowsers(toBrowserStats(counts.get(UrlClickRollup.Dimension.BROWSER), counts.total))
+                .topReferrers(toReferrerStats(counts.get(UrlClickRollup.Dimension.REFERRER), counts.total))
+                .recentClicks(getRecentClicks(
+                        urlClickRepository.findTop10ByUrlAndClickedAtBetweenOrderByClickedAtDesc(url, start, end), 10))
                 .build();
     }
+
+    /**
+     * Click totals keyed the way rollups store them, so rollup buckets and raw aggregates
+     * can be summed into the same response.
+     */
+    private static final class ClickCounts {
+        private final Map<String, Long> byDate = new TreeMap<>();
+        private final Map<String, Long> byHour = new TreeMap<>();
+        private final Map<UrlClickRollup.Dimension, Map<String, Long>> byDimension =
+                new EnumMap<>(UrlClickRollup.Dimension.class);
+        private long total;
+
+        void add(UrlClickRollup rollup) {
+            if (rollup.getDimension() == UrlClickRollup.Dimension.TOTAL) {
+                total += rollup.getClicks();
+                byDate.merge(rollup.getBucketStart().toLocalDate().toString(), rollup.getClicks(), Long::sum);
+                byHour.merge(String.valueOf(rollup.getBucketStart().getHour()), rollup.getClicks(), Long::sum);
+            } else {
+                add(rollup.getDimension(), rollup.getDimensionValue(), rollup.getClicks());
+            }
+        }
+
+        void add(UrlClickRollup.Dimension dimension, String value, long clicks) {
+            byDimension.computeIfAbsent(dimension, d -> new HashMap<>()).merge(value, clicks, Long::sum);
+        }
+
+        Map<String, Long> get(UrlClickRollup.Dimension dimension) {
+            return byDimension.getOrDefault(dimension, Map.of());
+        }
+    }
 }
@@ -2,22 +2,34 @@ package edu.au.life.shortenit.service;
 
 import edu.au.life.shortenit.dto.ApiKeyRequest;
 import edu.au.life.shortenit.dto.ApiKeyResponse;
+import edu.au.life.shortenit.dto.VerifiedApiKey;
 import edu.au.life.shortenit.entity.ApiKey;
 import edu.au.life.shortenit.entity.User;
 import edu.au.life.shortenit.exception.ForbiddenException;
 import edu.au.life.shortenit.exception.ResourceNotFoundException;
 import edu.au.life.shortenit.repository.ApiKeyRepository;
+import edu.au.life.shortenit.security.CurrentUser;
 import edu.au.life.shortenit.util.ApiKeyGenerator;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.bcrypt.BCrypt;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.time.LocalDateTime;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 public class ApiKeyService {
 
@@ -27,17 +39,59 @@ public class ApiKeyService {
     @Autowired
     private ApiKeyGenerator apiKeyGenerator;
 
+    @Autowired
+    private VerifiedApiKeyCache verifiedApiKeyCache;
+
+    @Autowired
+    private ApiKeyUsageTracker apiKeyUsageTracker;
+
     @Value("${api-key.prefix}")
     private String apiKeyPrefix;
 
     @Value("${api-key.length}")
     private int apiKeyLength;
 
+    // Dedicated to API keys: rotating or leaking another secret must not touch stored key digests
+    @Value("${api-key.hash-secret}")
+    private String hashSecret;
+
+    // Every legacy-format miss costs one BCrypt check per remaining legacy key. Unset, it is on
+    // only while such keys exist at startup, so keys issued before lookup ids keep working.
+    @Value("${api-key.legacy-bcrypt-fallback:#{null}}")
+    private Boolean legacyBcryptFallbackSetting;
+
+    private boolean legacyBcryptFallback;
+
+    private static final int LOOKUP_ID_LENGTH = 12;
+    private static final int MIN_HASH_SECRET_LENGTH = 32;
+
+    private SecretKeySpec hashKey;
+
+    @PostConstruct
+    void init() {
+        if (hashSecret == null || hashSecret.length() < MIN_HASH_SECRET_LENGTH) {
+            throw new IllegalStateException("api-key.hash-secret must be set to at least "
+                    + MIN_HASH_SECRET_LENGTH + " characters");
+        }
+        hashKey = new SecretKeySpec(hashSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+
+        long legacyKeys = apiKeyRepository.countLegacyBcrypt();
+        legacyBcryptFallback = legacyBcryptFallbackSetting != null ? legacyBcryptFallbackSetting : legacyKeys > 0;
+        if (legacyKeys > 0 && legacyBcryptFallback) {
+            log.warn("{} API keys still hold a BCrypt hash; each is re-hashed on first use, and until then "
+                    + "unknown legacy-format keys are checked against all of them", legacyKeys);
+        } else if (legacyKeys > 0) {
+            log.warn("{} API keys still hold a BCrypt hash and will be rejected because "
+                    + "api-key.legacy-bcrypt-fallback=false", legacyKeys);
+        }
+    }
+
     @Transactional
     public ApiKeyResponse createApiKey(User user, ApiKeyRequest request) {
 
-        String apiKey = apiKeyGenerator.generateApiKey(apiKeyPrefix, apiKeyLength);
-        String keyHash = BCrypt.hashpw(apiKey, BCrypt.gensalt(10));
+        // Key layout: prefix + lookup id + secret. Only the digest of the whole key is stored.
+        String apiKey = apiKeyGenerator.generateApiKey(apiKeyPrefix, LOOKUP_ID_LENGTH + apiKeyLength);
+        String keyHash = digest(apiKey);
 
         LocalDateTime expiresAt = null;
         if (request.getExpirationDays() != null && request.getExpirationDays() > 0) {
@@ -47,6 +101,7 @@ public class ApiKeyService {
         ApiKey entity = ApiKey.builder()
                 .user(user)
                 .keyHash(keyHash)
+                .lookupId(extractLookupId(apiKey))
                 .name(request.getName())
                 .expiresAt(expiresAt)
                 .build();
@@ -63,8 +118,68 @@ public class ApiKeyService {
                 .build();
     }
 
-    public List<ApiKeyResponse> getUserApiKeys(User user) {
-        List<ApiKey> apiKeys = apiKeyRepository.findByUserOrderByCreatedAtDesc(user);
+    /**
+     * Verifies a presented key. Recently verified keys are served from {@link VerifiedApiKeyCache};
+     * otherwise one indexed lookup and one HMAC. Keys in the pre-lookup-id layout are found by the
+     * HMAC of the whole key; only with the legacy fallback enabled are still-BCrypt rows scanned,
+     * and a match is re-hashed so the scan is needed once per key. Deliberately non-transactional
+     * so a cache hit never acquires a connection.
+     */
+    public Optional<VerifiedApiKey> authenticate(String presentedKey) {
+        String presentedDigest = digest(presentedKey);
+        VerifiedApiKey cached = verifiedApiKeyCache.get(presentedDigest);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        Optional<VerifiedApiKey> verified = findMatchingKey(presentedKey, presentedDigest).map(key -> new VerifiedApiKey(
+                key.getId(),
+                key.getUser().getId(),
+                key.getUser().getEmail(),
+                key.getUser().getRole().name(),
+                key.getExpiresAt()));
+        verified.ifPresent(key -> verifiedApiKeyCache.put(presentedDigest, key));
+        return verified;
+    }
+
+    /**
+     * Buffered; lastUsedAt reaches the database on the tracker's next flush.
+     */
+    public void recordUsage(Long apiKeyId) {
+        apiKeyUsageTracker.recordUsage(apiKeyId);
+    }
+
+    private Optional<ApiKey> findMatchingKey(String presentedKey, String presentedDigest) {
+        if (isCurrentLayout(presentedKey)) {
+            // A miss here is final; falling through to the legacy scan would let any random key cost BCrypt work
+            return apiKeyRepository.findByLookupIdWithUser(extractLookupId(presentedKey))
+                    .filter(key -> MessageDigest.isEqual(
+                            presentedDigest.getBytes(StandardCharsets.US_ASCII),
+                            key.getKeyHash().getBytes(StandardCharsets.US_ASCII)));
+        }
+        if (!isLegacyLayout(presentedKey)) {
+            return Optional.empty();
+        }
+
+        // Legacy keys already re-hashed are found by the digest of the whole key
+        Optional<ApiKey> upgraded = apiKeyRepository.findLegacyByKeyHashWithUser(presentedDigest);
+        if (upgraded.isPresent() || !legacyBcryptFallback) {
+            return upgraded;
+        }
+
+        for (ApiKey key : apiKeyRepository.findLegacyBcryptWithUser()) {
+            if (BCrypt.checkpw(presentedKey, key.getKeyHash())) {
+                // Every character of a legacy key is secret, so none of it becomes a lookup id
+                key.setKeyHash(presentedDigest);
+                apiKeyRepository.save(key);
+                return Optional.of(key);
+            }
+        }
+        return Optional.empty();
+    }
+
+    public List<ApiKeyResponse> getUserApiKeys(CurrentUser user) {
+        List<ApiKey> apiKeys = apiKeyRepository.findByUserIdOrderByCreatedAtDesc(user.id());
 
         return apiKeys.stream()
                 .map(this::convertToResponse)
@@ -72,19 +187,27 @@ public class ApiKeyService {
     }
 
     @Transactional
-    public void deleteApiKey(User user, Long apiKeyId) {
+    public void deleteApiKey(CurrentUser user, Long apiKeyId) {
         ApiKey apiKey = apiKeyRepository.findById(apiKeyId)
                 .orElseThrow(() -> new ResourceNotFoundException("API key not found"));
 
         // Check ownership
-        if (!apiKey.getUser().getId().equals(user.getId())) {
+        if (!apiKey.getUser().getId().equals(user.id())) {
             throw new ForbiddenException("You do not have permission to delete this API key");
         }
 
         apiKeyRepository.delete(apiKey);
+        verifiedApiKeyCache.invalidateKey(apiKeyId);
+        apiKeyUsageTracker.forget(apiKeyId);
     }
 
     private ApiKeyResponse convertToResponse(ApiKey apiKey) {
+        // Prefer usage still buffered in the tracker over the last flushed value
+        LocalDateTime lastUsedAt = apiKeyUsageTracker.pendingLastUsedAt(apiKey.getId());
+        if (lastUsedAt == null) {
+            lastUsedAt = apiKey.getLastUsedAt();
+        }
+
         return ApiKeyResponse.builder()
                 .id(apiKey.getId())
                 .name(apiKey.getName())
@@ -92,11 +215,37 @@ public class ApiKeyService {
                 .maskedKey("sk_live_***" + apiKey.getId())
                 .scopes(apiKey.getScopes())
                 .expiresAt(apiKey.getExpiresAt())
-                .lastUsedAt(apiKey.getLastUsedAt())
+                .lastUsedAt(lastUsedAt)
                 .createdAt(apiKey.getCreatedAt())
                 .build();
     }
 
+    // prefix + lookup id + secret
+    private boolean isCurrentLayout(String apiKey) {
+        return apiKey != null && apiKey.startsWith(apiKeyPrefix)
+                && apiKey.length() == apiKeyPrefix.length() + LOOKUP_ID_LENGTH + apiKeyLength;
+    }
+
+    // prefix + secret, as issued before lookup ids existed
+    private boolean isLegacyLayout(String apiKey) {
+        return apiKey != null && apiKey.startsWith(apiKeyPrefix)
+                && apiKey.length() == apiKeyPrefix.length() + apiKeyLength;
+    }
+
+    private String extractLookupId(String apiKey) {
+        return apiKey.substring(apiKeyPrefix.length(), apiKeyPrefix.length() + LOOKUP_ID_LENGTH);
+    }
+
+    private String digest(String apiKey) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(hashKey);
+            return HexFormat.of().formatHex(mac.doFinal(apiKey.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
     private String maskApiKey(String apiKey) {
         if (apiKey.length() <= 8) {
             return "***";
@@ -0,0 +1,105 @@
+package edu.au.life.shortenit.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records API-key usage in memory and writes lastUsedAt for every key touched since the
+ * previous flush as one UPDATE ... FROM (VALUES ...) per app.api-key-usage.flush-interval-ms.
+ */
+@Slf4j
+@Component
+public class ApiKeyUsageTracker {
+
+    // Postgres caps a statement at 32767 bind parameters, two per row
+    private static final int MAX_ROWS_PER_STATEMENT = 10000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ConcurrentHashMap<Long, LocalDateTime> pending = new ConcurrentHashMap<>();
+
+    public ApiKeyUsageTracker(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        Gauge.builder("api-keys.usage.pending", pending, Map::size)
+                .register(meterRegistry);
+    }
+
+    public void recordUsage(Long apiKeyId) {
+        LocalDateTime now = LocalDateTime.now();
+        pending.merge(apiKeyId, now, (previous, current) -> current.isAfter(previous) ? current : previous);
+    }
+
+    /**
+     * Usage recorded but not yet flushed, or null. Lets readers report a value
+     * newer than the database holds.
+     */
+    public LocalDateTime pendingLastUsedAt(Long apiKeyId) {
+        return pending.get(apiKeyId);
+    }
+
+    public void forget(Long apiKeyId) {
+        pending.remove(apiKeyId);
+    }
+
+    @Scheduled(fixedDelayString = "${app.api-key-usage.flush-interval-ms:60000}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<Map.Entry<Long, LocalDateTime>> rows = new ArrayList<>();
+        for (Map.Entry<Long, LocalDateTime> entry : pending.entrySet()) {
+            // Only remove the value we read; a newer one recorded meanwhile waits for the next flush
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                rows.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+
+        for (int from = 0; from < rows.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<Map.Entry<Long, LocalDateTime>> chunk = rows.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, rows.size()));
+            try {
+                apply(chunk);
+            } catch (Exception e) {
+                log.error("Failed to write lastUsedAt for {} API keys, will retry", chunk.size(), e);
+                for (Map.Entry<Long, LocalDateTime> row : chunk) {
+                    pending.merge(row.getKey(), row.getValue(),
+                            (current, failed) -> current.isAfter(failed) ? current : failed);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+        log.info("Pending API key usage flushed on shutdown");
+    }
+
+    private void apply(List<Map.Entry<Long, LocalDateTime>> rows) {
+        StringBuilder sql = new StringBuilder("UPDATE api_keys k SET last_used_at = v.used_at FROM (VALUES ");
+        Object[] args = new Object[rows.size() * 2];
+        int i = 0;
+        for (Map.Entry<Long, LocalDateTime> row : rows) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append("(?::bigint, ?::timestamp)");
+            args[i++] = row.getKey();
+            args[i++] = Timestamp.valueOf(row.getValue());
+        }
+        sql.append(") AS v(id, used_at) WHERE k.id = v.id " +
+                "AND (k.last_used_at IS NULL OR k.last_used_at < v.used_at)");
+        jdbcTemplate.update(sql.toString(), args);
+    }
+}
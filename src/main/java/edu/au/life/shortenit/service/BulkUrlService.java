@@ -0,0 +1,238 @@
+package edu.au.life.shortenit.service;
+
+import edu.au.life.shortenit.dto.BulkShortenResponse;
+import edu.au.life.shortenit.dto.UrlResponse;
+import edu.au.life.shortenit.dto.UrlShortenRequest;
+import edu.au.life.shortenit.entity.Url;
+import edu.au.life.shortenit.entity.User;
+import edu.au.life.shortenit.exception.ResourceNotFoundException;
+import edu.au.life.shortenit.repository.UrlRepository;
+import edu.au.life.shortenit.repository.UserRepository;
+import edu.au.life.shortenit.security.CurrentUser;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Creates URLs in bulk with set-based persistence: one alias-collision query per chunk,
+ * auto codes from {@link ShortCodeAllocator} in one call, and multi-row inserts.
+ * Failures are reported per item and never fail the rest of the batch: a chunk whose insert
+ * fails is retried row by row, so only the offending rows are reported.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BulkUrlService {
+
+    public static final int CHUNK_SIZE = 1000;
+
+    private static final String INSERT_PREFIX = "INSERT INTO urls " +
+            "(user_id, original_url, code, code_type, title, created_at, expires_at, click_count, is_active) VALUES ";
+    private static final String ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?, ?, ?, 0, true)";
+    // A custom alias taken between the collision check and the insert is skipped, not fatal
+    private static final String INSERT_SUFFIX = " ON CONFLICT (code) DO NOTHING RETURNING id, code";
+
+    private final UrlRepository urlRepository;
+    private final UserRepository userRepository;
+    private final ShortCodeAllocator shortCodeAllocator;
+    private final JdbcTemplate jdbcTemplate;
+    private final Validator validator;
+
+    @Value("${app.base-url}")
+    private String baseUrl;
+
+    /**
+     * Shortens the given requests; result indexes start at firstIndex so streamed
+     * callers can submit one chunk at a time.
+     */
+    public List<BulkShortenResponse.Item> shortenUrls(List<UrlShortenRequest> requests, int firstIndex, CurrentUser user) {
+        if (requests.isEmpty()) {
+            return List.of();
+        }
+        User owner = userRepository.findById(user.id())
+                .orElseThrow(() -> new ResourceNotFoundException("User not found"));
+
+        List<BulkShortenResponse.Item> results = new ArrayList<>(requests.size());
+        for (int from = 0; from < requests.size(); from += CHUNK_SIZE) {
+            List<UrlShortenRequest> chunk = requests.subList(from, Math.min(from + CHUNK_SIZE, requests.size()));
+            results.addAll(shortenChunk(chunk, firstIndex + from, owner));
+        }
+        return results;
+    }
+
+    private List<BulkShortenResponse.Item> shortenChunk(List<UrlShortenRequest> requests, int firstIndex, User owner) {
+        Map<Integer, String> errors = new HashMap<>();
+        Map<Integer, String> customCodes = new HashMap<>();
+        List<Integer> autoIndexes = new ArrayList<>();
+
+        Set<String> seenCodes = new HashSet<>();
+        for (int i = 0; i < requests.size(); i++) {
+            UrlShortenRequest request = requests.get(i);
+            String violation = validate(request);
+            if (violation != null) {
+                errors.put(i, violation);
+            } else if (request.getCode() != null && !request.getCode().isBlank()) {
+                if (ShortCodeAllocator.isAutoCodeShape(request.getCode())) {
+                    errors.put(i, "Code is reserved for generated links: " + request.getCode());
+                } else if (seenCodes.add(request.getCode())) {
+                    customCodes.put(i, request.getCode());
+                } else {
+                    errors.put(i, "Code is duplicated in this batch: " + request.getCode());
+                }
+            } else {
+                autoIndexes.add(i);
+            }
+        }
+
+        // One query for every custom alias in the chunk
+        if (!customCodes.isEmpty()) {
+            Set<String> taken = new HashSet<>(urlRepository.findExistingCodes(customCodes.values()));
+            customCodes.entrySet().removeIf(entry -> {
+                if (taken.contains(entry.getValue())) {
+                    errors.put(entry.getKey(), "Code already exists: " + entry.getValue());
+                    return true;
+                }
+                return false;
+            });
+        }
+
+        Map<Integer, String> codes = new HashMap<>(customCodes);
+        Iterator<String> autoCodes = shortCodeAllocator.next(autoIndexes.size()).iterator();
+        for (Integer index : autoIndexes) {
+            codes.put(index, autoCodes.next());
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, Long> insertedIds = codes.isEmpty() ? Map.of() : insert(requests, codes, owner, now, errors);
+
+        List<BulkShortenResponse.Item> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            String code = codes.get(i);
+            Long id = code != null ? insertedIds.get(code) : null;
+            if (id != null) {
+                results.add(BulkShortenResponse.Item.builder()
+                        .index(firstIndex + i)
+                        .url(toResponse(id, code, customCodes.containsKey(i), requests.get(i), owner, now))
+                        .build());
+            } else {
+                String error = errors.getOrDefault(i, "Code already exists: " + code);
+                results.add(BulkShortenResponse.Item.builder()
+                        .index(firstIndex + i)
+                        .error(error)
+                        .build());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Inserts the chunk in one statement. Each statement commits on its own, so if it fails the
+     * rows are retried one at a time and only those that fail again get an error.
+     */
+    private Map<String, Long> insert(List<UrlShortenRequest> requests, Map<Integer, String> codes,
+                                     User owner, LocalDateTime now, Map<Integer, String> errors) {
+        try {
+            return insertRows(requests, codes, owner, now);
+        } catch (DataAccessException e) {
+            log.warn("Bulk insert of {} urls failed, retrying row by row: {}", codes.size(), e.getMessage());
+        }
+
+        Map<String, Long> ids = new HashMap<>();
+        for (Map.Entry<Integer, String> entry : codes.entrySet()) {
+            try {
+                ids.putAll(insertRows(requests, Map.of(entry.getKey(), entry.getValue()), owner, now));
+            } catch (DataAccessException e) {
+                errors.put(entry.getKey(), "Could not be saved");
+            }
+        }
+        return ids;
+    }
+
+    private Map<String, Long> insertRows(List<UrlShortenRequest> requests, Map<Integer, String> codes,
+                                         User owner, LocalDateTime now) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX);
+        Object[] args = new Object[codes.size() * 7];
+        int i = 0;
+        for (Map.Entry<Integer, String> entry : codes.entrySet()) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(ROW_PLACEHOLDERS);
+            UrlShortenRequest request = requests.get(entry.getKey());
+            boolean custom = request.getCode() != null && !request.getCode().isBlank();
+            LocalDateTime expiresAt = expiresAt(request, now);
+            args[i++] = owner.getId();
+            args[i++] = request.getOriginalUrl();
+            args[i++] = entry.getValue();
+            args[i++] = (custom ? Url.CodeType.CUSTOM : Url.CodeType.AUTO).name();
+            args[i++] = request.getTitle();
+            args[i++] = Timestamp.valueOf(now);
+            args[i++] = expiresAt != null ? Timestamp.valueOf(expiresAt) : null;
+        }
+        sql.append(INSERT_SUFFIX);
+
+        Map<String, Long> ids = new HashMap<>();
+        jdbcTemplate.query(sql.toString(), rs -> {
+            ids.put(rs.getString("code"), rs.getLong("id"));
+        }, args);
+        return ids;
+    }
+
+    private String validate(UrlShortenRequest request) {
+        if (request == null) {
+            return "Request is empty";
+        }
+        Set<ConstraintViolation<UrlShortenRequest>> violations = validator.validate(request);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return "Validation failed: " + violations.stream()
+                .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    private static LocalDateTime expiresAt(UrlShortenRequest request, LocalDateTime now) {
+        if (request.getExpirationDays() != null && request.getExpirationDays() > 0) {
+            return now.plusDays(request.getExpirationDays());
+        }
+        return null;
+    }
+
+    private UrlResponse toResponse(Long id, String code, boolean custom, UrlShortenRequest request,
+                                   User owner, LocalDateTime now) {
+        return UrlResponse.builder()
+                .id(id)
+                .originalUrl(request.getOriginalUrl())
+                .code(code)
+                .shortUrl(baseUrl + "/s/" + code)
+                .title(request.getTitle())
+                .createdAt(now)
+                .expiresAt(expiresAt(request, now))
+                .clickCount(0L)
+                .isActive(true)
+                .codeType((custom ? Url.CodeType.CUSTOM : Url.CodeType.AUTO).name())
+                .owner(UrlResponse.UserInfo.builder()
+                        .id(owner.getId())
+                        .name(owner.getName())
+                        .email(owner.getEmail())
+                        .build())
+                .build();
+    }
+}
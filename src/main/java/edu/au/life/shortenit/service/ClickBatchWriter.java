@@ -0,0 +1,182 @@
+package edu.au.life.shortenit.service;
+
+import edu.au.life.shortenit.entity.UrlClick;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Buffers enriched clicks and writes them to url_clicks as multi-row INSERTs,
+ * updating the hourly rollups in the same transaction.
+ * A flush happens when max-batch rows are pending or every max-linger-ms, whichever comes first,
+ * and once more on shutdown so no buffered clicks are lost on deploy.
+ */
+@Slf4j
+@Component
+public class ClickBatchWriter {
+
+    private static final String INSERT_PREFIX = "INSERT INTO url_clicks " +
+            "(url_id, clicked_at, ip_address, country_id, city_id, user_agent_id, device_type_id, browser_id, " +
+            "operating_system_id, referrer_id) " +
+            "VALUES ";
+    private static final String ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final int COLUMNS_PER_ROW = 10;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ClickRollupService clickRollupService;
+    private final ClickDimensionDictionary clickDimensionDictionary;
+    private final int maxBatch;
+
+    private final Counter persistedCounter;
+    private final Counter discardedCounter;
+
+    private final Object lock = new Object();
+    private List<PendingClick> buffer;
+
+    public ClickBatchWriter(JdbcTemplate jdbcTemplate,
+                            TransactionTemplate transactionTemplate,
+                            ClickRollupService clickRollupService,
+                            ClickDimensionDictionary clickDimensionDictionary,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.click-writer.max-batch:1000}") int maxBatch) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.clickRollupService = clickRollupService;
+        this.clickDimensionDictionary = clickDimensionDictionary;
+        // Postgres caps a statement at 32767 bind parameters
+        this.maxBatch = Math.min(maxBatch, Short.MAX_VALUE / COLUMNS_PER_ROW);
+        this.buffer = new ArrayList<>(this.maxBatch);
+        this.persistedCounter = Counter.builder("clicks.persisted").register(meterRegistry);
+        this.discardedCounter = Counter.builder("clicks.discarded").register(meterRegistry);
+    }
+
+    public void add(Long urlId, UrlClick click) {
+        List<PendingClick> full = null;
+        synchronized (lock) {
+            buffer.add(new PendingClick(urlId, click));
+            if (buffer.size() >= maxBatch) {
+                full = swapBuffer();
+            }
+        }
+        if (full != null) {
+            write(full);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.click-writer.max-linger-ms:1000}")
+    public void flush() {
+        List<PendingClick> pending;
+        synchronized (lock) {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            pending = swapBuffer();
+        }
+        write(pending);
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+        log.info("Click writer flushed on shutdown");
+    }
+
+    private List<PendingClick> swapBuffer() {
+        List<PendingClick> pending = buffer;
+        buffer = new ArrayList<>(maxBatch);
+        return pending;
+    }
+
+    private void write(List<PendingClick> rows) {
+        try {
+            insert(rows);
+        } catch (DataIntegrityViolationException e) {
+            // A URL was deleted after its clicks were captured; keep the rows that still have a parent
+            Set<Long> existing = existingUrlIds(rows);
+            List<PendingClick> valid = rows.stream()
+                    .filter(row -> existing.contains(row.urlId()))
+                    .collect(Collectors.toList());
+            discardedCounter.increment(rows.size() - valid.size());
+            log.debug("Discarded {} clicks for deleted URLs", rows.size() - valid.size());
+            if (!valid.isEmpty()) {
+                insert(valid);
+            }
+        } catch (Exception e) {
+            log.error("Failed to write {} clicks", rows.size(), e);
+        }
+    }
+
+    private void insert(List<PendingClick> rows) {
+        // Dictionary entries commit before the batch, so the ids stay valid if the insert fails
+        List<String> values = new ArrayList<>(rows.size() * 7);
+        for (PendingClick row : rows) {
+            UrlClick click = row.click();
+            values.add(click.getCountry());
+            values.add(click.getCity());
+            values.add(click.getUserAgent());
+            values.add(click.getDeviceType());
+            values.add(click.getBrowser());
+            values.add(click.getOperatingSystem());
+            values.add(click.getReferrer());
+        }
+        Map<String, Integer> ids = clickDimensionDictionary.encode(values);
+
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + rows.size() * (ROW_PLACEHOLDERS.length() + 2));
+        sql.append(INSERT_PREFIX);
+        Object[] args = new Object[rows.size() * COLUMNS_PER_ROW];
+        int i = 0;
+        for (PendingClick row : rows) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(ROW_PLACEHOLDERS);
+            UrlClick click = row.click();
+            args[i++] = row.urlId();
+            args[i++] = Timestamp.valueOf(click.getClickedAt());
+            args[i++] = click.getIpAddress();
+            args[i++] = idOf(ids, click.getCountry());
+            args[i++] = idOf(ids, click.getCity());
+            args[i++] = idOf(ids, click.getUserAgent());
+            args[i++] = idOf(ids, click.getDeviceType());
+            args[i++] = idOf(ids, click.getBrowser());
+            args[i++] = idOf(ids, click.getOperatingSystem());
+            args[i++] = idOf(ids, click.getReferrer());
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(sql.toString(), args);
+            clickRollupService.record(rows);
+        });
+        persistedCounter.increment(rows.size());
+    }
+
+    private Set<Long> existingUrlIds(List<PendingClick> rows) {
+        Set<Long> ids = rows.stream().map(PendingClick::urlId).collect(Collectors.toSet());
+        String placeholders = ids.stream().map(id -> "?").collect(Collectors.joining(", "));
+        return new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT id FROM urls WHERE id IN (" + placeholders + ")", Long.class, ids.toArray()));
+    }
+
+    private static Integer idOf(Map<String, Integer> ids, String value) {
+        String normalized = ClickDimensionDictionary.normalize(value);
+        return normalized != null ? ids.get(normalized) : null;
+    }
+
+    public record PendingClick(Long urlId, UrlClick click) {
+    }
+}
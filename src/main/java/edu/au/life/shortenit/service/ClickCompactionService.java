@@ -0,0 +1,168 @@
+package edu.au.life.shortenit.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Keeps full-detail clicks for raw-retention-days and compacts everything older into the hourly
+ * rollups. Rollups are written in the same transaction as the raw rows, so they already hold the
+ * folded counts; compaction advances the watermark and then removes the raw rows behind it,
+ * dropping whole partitions where it can and deleting the rest in bounded chunks, then prunes
+ * dictionary values no remaining row uses.
+ * Before the watermark, rollups are the only source of truth for analytics and rebuilds, so
+ * nothing is compacted until the rollups have been backfilled from the raw history once.
+ */
+@Slf4j
+@Service
+public class ClickCompactionService {
+
+    private static final LocalDateTime NOT_COMPACTED = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    // Served by idx_url_clicks_clicked_at, so each chunk reads only the rows it deletes
+    private static final String DELETE_CHUNK = "DELETE FROM url_clicks WHERE (id, clicked_at) IN " +
+            "(SELECT id, clicked_at FROM url_clicks WHERE clicked_at < ? LIMIT ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ClickPartitionManager clickPartitionManager;
+    private final ClickDimensionDictionary clickDimensionDictionary;
+
+    // Opt-in: raw clicks behind the cutoff are deleted for good
+    @Value("${app.click-compaction.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.click-compaction.raw-retention-days:90}")
+    private int rawRetentionDays;
+
+    @Value("${app.click-compaction.chunk-size:5000}")
+    private int chunkSize;
+
+    private volatile LocalDateTime compactedBefore = NOT_COMPACTED;
+
+    public ClickCompactionService(JdbcTemplate jdbcTemplate,
+                                  TransactionTemplate transactionTemplate,
+                                  ClickPartitionManager clickPartitionManager,
+                                  ClickDimensionDictionary clickDimensionDictionary) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.clickPartitionManager = clickPartitionManager;
+        this.clickDimensionDictionary = clickDimensionDictionary;
+    }
+
+    @PostConstruct
+    public void init() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS click_compaction_watermark (" +
+                "id INT PRIMARY KEY CHECK (id = 1), compacted_before TIMESTAMP(6) NOT NULL)");
+        jdbcTemplate.update("INSERT INTO click_compaction_watermark (id, compacted_before) VALUES (1, ?) " +
+                "ON CONFLICT (id) DO NOTHING", Timestamp.valueOf(NOT_COMPACTED));
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS click_rollup_backfill (" +
+                "id INT PRIMARY KEY CHECK (id = 1), completed_at TIMESTAMP(6) NOT NULL)");
+        refreshWatermark();
+    }
+
+    /**
+     * True once a full rollup rebuild has committed. Decides the startup backfill and gates compaction.
+     */
+    public boolean isRollupBackfillComplete() {
+        Boolean complete = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM click_rollup_backfill WHERE id = 1)", Boolean.class);
+        return Boolean.TRUE.equals(complete);
+    }
+
+    /**
+     * Records a completed backfill; call inside the rebuild's transaction so the marker commits with it.
+     */
+    public void markRollupBackfillComplete() {
+        jdbcTemplate.update("INSERT INTO click_rollup_backfill (id, completed_at) VALUES (1, ?) " +
+                "ON CONFLICT (id) DO NOTHING", Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    /**
+     * Raw clicks before this instant may be gone; count them from rollups only. Hour-aligned.
+     */
+    public LocalDateTime getCompactedBefore() {
+        return compactedBefore;
+    }
+
+    /**
+     * Also applies partition retention (app.click-partitions.retention-months), whichever cutoff is
+     * later. The watermark always moves before any raw row or partition goes, so a rollup rebuild
+     * never recounts a dropped range from nothing.
+     */
+    @Scheduled(cron = "${app.click-compaction.cron:0 45 3 * * *}")
+    public void compact() {
+        // Other nodes may have moved the watermark since we last looked
+        refreshWatermark();
+        if (!isRollupBackfillComplete()) {
+            log.warn("Skipping click compaction: rollups have not been backfilled from url_clicks yet "
+                    + "(startup backfill or POST /api/admin/analytics/rollups/rebuild)");
+            return;
+        }
+        LocalDateTime cutoff = null;
+        if (enabled && rawRetentionDays > 0) {
+            cutoff = LocalDateTime.now().minusDays(rawRetentionDays).truncatedTo(ChronoUnit.HOURS);
+        }
+        LocalDateTime retentionCutoff = clickPartitionManager.getRetentionCutoff();
+        if (retentionCutoff != null && (cutoff == null || retentionCutoff.isAfter(cutoff))) {
+            cutoff = retentionCutoff;
+        }
+        if (cutoff == null) {
+            return;
+        }
+        if (cutoff.isAfter(compactedBefore)) {
+            advanceWatermark(cutoff);
+        }
+
+        // Whole months behind the watermark go as partitions; the rest in chunks
+        int dropped = clickPartitionManager.dropPartitionsBefore(YearMonth.from(compactedBefore));
+        long deleted = deleteRawBefore(compactedBefore);
+        if (dropped > 0 || deleted > 0) {
+            log.info("Compacted raw clicks before {}: {} partitions dropped, {} rows deleted",
+                    compactedBefore, dropped, deleted);
+        }
+
+        // Values only the removed rows used would otherwise stay in the dictionary forever
+        try {
+            clickDimensionDictionary.pruneUnreferenced();
+        } catch (Exception e) {
+            log.error("Failed to prune click dimension values", e);
+        }
+    }
+
+    private void advanceWatermark(LocalDateTime cutoff) {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(
+                "UPDATE click_compaction_watermark SET compacted_before = GREATEST(compacted_before, ?) WHERE id = 1",
+                Timestamp.valueOf(cutoff)));
+        refreshWatermark();
+    }
+
+    // Each chunk commits on its own, so locks and WAL per statement stay bounded
+    private long deleteRawBefore(LocalDateTime before) {
+        long deleted = 0;
+        int rows;
+        do {
+            rows = jdbcTemplate.update(DELETE_CHUNK, Timestamp.valueOf(before), chunkSize);
+            deleted += rows;
+        } while (rows == chunkSize);
+        return deleted;
+    }
+
+    private void refreshWatermark() {
+        List<Timestamp> rows = jdbcTemplate.queryForList(
+                "SELECT compacted_before FROM click_compaction_watermark WHERE id = 1", Timestamp.class);
+        if (!rows.isEmpty()) {
+            compactedBefore = rows.get(0).toLocalDateTime();
+        }
+    }
+}
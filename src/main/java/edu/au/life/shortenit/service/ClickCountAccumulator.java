@@ -0,0 +1,117 @@
+package edu.au.life.shortenit.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces per-redirect click_count increments in memory and applies them as one
+ * UPDATE ... FROM (VALUES ...) per flush interval, so hot URLs no longer serialise on a row lock.
+ * Url.clickCount is therefore eventually consistent within app.click-count.flush-interval-ms.
+ */
+@Slf4j
+@Component
+public class ClickCountAccumulator {
+
+    // Postgres caps a statement at 32767 bind parameters, two per row
+    private static final int MAX_ROWS_PER_STATEMENT = 10000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ConcurrentHashMap<Long, LongAdder> pending = new ConcurrentHashMap<>();
+    // Adders removed for being idle; drained once more in case a caller still held a reference
+    private List<Map.Entry<Long, LongAdder>> retired = new ArrayList<>();
+
+    public ClickCountAccumulator(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        Gauge.builder("clicks.count.pending", this, ClickCountAccumulator::pendingClicks)
+                .register(meterRegistry);
+        Gauge.builder("clicks.count.pending.urls", pending, Map::size)
+                .register(meterRegistry);
+    }
+
+    public void increment(Long urlId) {
+        pending.computeIfAbsent(urlId, id -> new LongAdder()).increment();
+    }
+
+    public long pendingClicks() {
+        long total = 0;
+        for (LongAdder adder : pending.values()) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    @Scheduled(fixedDelayString = "${app.click-count.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        Map<Long, Long> deltas = new HashMap<>();
+
+        for (Map.Entry<Long, LongAdder> entry : retired) {
+            long delta = entry.getValue().sumThenReset();
+            if (delta > 0) {
+                deltas.merge(entry.getKey(), delta, Long::sum);
+            }
+        }
+        List<Map.Entry<Long, LongAdder>> nowIdle = new ArrayList<>();
+
+        for (Map.Entry<Long, LongAdder> entry : pending.entrySet()) {
+            long delta = entry.getValue().sumThenReset();
+            if (delta > 0) {
+                deltas.merge(entry.getKey(), delta, Long::sum);
+            } else if (pending.remove(entry.getKey(), entry.getValue())) {
+                nowIdle.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        retired = nowIdle;
+
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        List<Map.Entry<Long, Long>> rows = new ArrayList<>(deltas.entrySet());
+        for (int from = 0; from < rows.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<Map.Entry<Long, Long>> chunk = rows.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, rows.size()));
+            try {
+                apply(chunk);
+            } catch (Exception e) {
+                log.error("Failed to apply click counts for {} URLs, will retry", chunk.size(), e);
+                for (Map.Entry<Long, Long> row : chunk) {
+                    pending.computeIfAbsent(row.getKey(), id -> new LongAdder()).add(row.getValue());
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+        log.info("Pending click counts flushed on shutdown");
+    }
+
+    private void apply(List<Map.Entry<Long, Long>> rows) {
+        StringBuilder sql = new StringBuilder("UPDATE urls u SET click_count = u.click_count + v.delta FROM (VALUES ");
+        Object[] args = new Object[rows.size() * 2];
+        int i = 0;
+        for (Map.Entry<Long, Long> row : rows) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append("(?::bigint, ?::bigint)");
+            args[i++] = row.getKey();
+            args[i++] = row.getValue();
+        }
+        sql.append(") AS v(id, delta) WHERE u.id = v.id");
+        jdbcTemplate.update(sql.toString(), args);
+    }
+}
@@ -0,0 +1,378 @@
+package edu.au.life.shortenit.service;
+
+import edu.au.life.shortenit.entity.UrlClick;
+import edu.au.life.shortenit.util.BoundedCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Maps click dimension strings (country, city, user agent, device, browser, OS, referrer origin) to
+ * small integer ids in click_dimension_values, so url_clicks rows carry ints instead of repeated text.
+ * An id never changes meaning, so both directions are cached in memory and only misses touch the
+ * database. Values no click references any more are pruned by the compaction job.
+ */
+@Slf4j
+@Service
+public class ClickDimensionDictionary {
+
+    public static final int MAX_VALUE_LENGTH = 500;
+
+    // scheme://host[:port]; the SQL backfill uses the same pattern so old and new rows agree
+    private static final String ORIGIN_REGEX = "^[A-Za-z][A-Za-z0-9+.-]*://[^/?#]*";
+    private static final Pattern ORIGIN = Pattern.compile(ORIGIN_REGEX);
+
+    // Postgres caps a statement at 32767 bind parameters
+    private static final int MAX_ROWS_PER_STATEMENT = 10000;
+    private static final long ADVISORY_LOCK_KEY = 0x636c6b5f64696374L;
+    // Dimension (id column minus _id, and legacy text column) -> SQL for the value its text is stored as, row alias u
+    private static final String[][] DIMENSIONS = {
+            {"country", "LEFT(NULLIF(u.country, ''), 500)"},
+            {"city", "LEFT(NULLIF(u.city, ''), 500)"},
+            {"user_agent", "LEFT(NULLIF(u.user_agent, ''), 500)"},
+            {"device_type", "LEFT(NULLIF(u.device_type, ''), 500)"},
+            {"browser", "LEFT(NULLIF(u.browser, ''), 500)"},
+            {"operating_system", "LEFT(NULLIF(u.operating_system, ''), 500)"},
+            {"referrer", "LEFT(NULLIF(lower(substring(u.referrer from '" + ORIGIN_REGEX + "')), ''), 500)"}
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate newTransaction;
+    private final BoundedCache<String, Integer> idsByValue;
+    private final BoundedCache<Integer, String> valuesById;
+    private final Duration cacheTtl;
+    private final CompletableFuture<Boolean> legacyMigration = new CompletableFuture<>();
+    private final ExecutorService migrator = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "click-dictionary-migration");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Backfilling ids for text-column rows rewrites every row; only done when asked for
+    @Value("${app.click-dictionary.migrate:false}")
+    private boolean migrate;
+
+    @Value("${app.click-dictionary.migrate-chunk-size:10000}")
+    private int migrateChunkSize;
+
+    @Value("${app.click-dictionary.prune.enabled:true}")
+    private boolean pruneEnabled;
+
+    public ClickDimensionDictionary(JdbcTemplate jdbcTemplate,
+                                    TransactionTemplate transactionTemplate,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${app.click-dictionary.cache.max-size:100000}") int cacheMaxSize,
+                                    @Value("${app.click-dictionary.cache.ttl-seconds:86400}") long cacheTtlSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.newTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.cacheTtl = Duration.ofSeconds(cacheTtlSeconds);
+        this.idsByValue = new BoundedCache<>(cacheMaxSize, cacheTtl);
+        this.valuesById = new BoundedCache<>(cacheMaxSize, cacheTtl);
+        this.idsByValue.registerMetrics(meterRegistry, "click-dictionary-ids");
+        this.valuesById.registerMetrics(meterRegistry, "click-dictionary-values");
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!hasLegacyColumns()) {
+            legacyMigration.complete(false);
+        } else if (migrate) {
+            migrator.execute(() -> {
+                try {
+                    migrateLegacyColumns();
+                    legacyMigration.complete(true);
+                } catch (Exception e) {
+                    log.error("url_clicks dictionary migration failed; it resumes on the next start", e);
+                    legacyMigration.completeExceptionally(e);
+                }
+            });
+        } else {
+            log.warn("url_clicks still has text dimension columns; older clicks show no dimensions "
+                    + "until app.click-dictionary.migrate=true converts them");
+            legacyMigration.completeExceptionally(
+                    new IllegalStateException("url_clicks text dimension columns are not migrated"));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        migrator.shutdownNow();
+    }
+
+    /**
+     * Completes once url_clicks has no text dimension columns left: with true if they were dropped
+     * by this run (the table still holds their dead space), false if there were none. Completes
+     * exceptionally while they remain, so nothing copies url_clicks and loses them.
+     */
+    public CompletableFuture<Boolean> legacyMigration() {
+        return legacyMigration;
+    }
+
+    /**
+     * The form a value is stored in: blank becomes null, long values are cut to MAX_VALUE_LENGTH.
+     * Look up encode results with the normalized value.
+     */
+    public static String normalize(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        return value.length() > MAX_VALUE_LENGTH ? value.substring(0, MAX_VALUE_LENGTH) : value;
+    }
+
+    /**
+     * Lowercased scheme://host[:port] of a referrer, or null if it is not an absolute URL.
+     * Full referrers are near-unique per click; their origins are few and repeat.
+     */
+    public static String referrerOrigin(String referrer) {
+        if (referrer == null) {
+            return null;
+        }
+        Matcher matcher = ORIGIN.matcher(referrer);
+        return matcher.lookingAt() ? normalize(matcher.group().toLowerCase(Locale.ROOT)) : null;
+    }
+
+    /**
+     * Ids for the given values (keyed by normalized value), creating dictionary entries as needed.
+     * Misses cost one upsert that also stamps last_used_at, committed straight away and
+     * independent of any caller's transaction, so a cached id can never point at a rolled-back row
+     * and is never pruned while a node may still hold it.
+     */
+    public Map<String, Integer> encode(Collection<String> values) {
+        Map<String, Integer> ids = new HashMap<>();
+        // Sorted, so concurrent upserts lock rows in the same order
+        TreeSet<String> missing = new TreeSet<>();
+        for (String raw : values) {
+            String value = normalize(raw);
+            if (value == null || ids.containsKey(value)) {
+                continue;
+            }
+            Integer id = idsByValue.get(value);
+            if (id != null) {
+                ids.put(value, id);
+            } else {
+                missing.add(value);
+            }
+        }
+
+        List<String> pending = new ArrayList<>(missing);
+        for (int from = 0; from < pending.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<String> chunk = pending.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, pending.size()));
+            newTransaction.executeWithoutResult(status -> jdbcTemplate.query(
+                    "INSERT INTO click_dimension_values (value, last_used_at) VALUES " +
+                            String.join(", ", Collections.nCopies(chunk.size(), "(?, now())")) +
+                            " ON CONFLICT (value) DO UPDATE SET last_used_at = EXCLUDED.last_used_at" +
+                            " RETURNING id, value",
+                    rs -> {
+                        int id = rs.getInt("id");
+                        String value = rs.getString("value");
+                        idsByValue.put(value, id);
+                        valuesById.put(id, value);
+                        ids.put(value, id);
+                    }, chunk.toArray()));
+        }
+        return ids;
+    }
+
+    /**
+     * Values for the given ids; unknown ids are left out.
+     */
+    public Map<Integer, String> decode(Collection<Integer> ids) {
+        Map<Integer, String> values = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : ids) {
+            if (id == null || values.containsKey(id)) {
+                continue;
+            }
+            String value = valuesById.get(id);
+            if (value != null) {
+                values.put(id, value);
+            } else {
+                missing.add(id);
+            }
+        }
+
+        List<Integer> pending = missing.stream().distinct().collect(Collectors.toList());
+        for (int from = 0; from < pending.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<Integer> chunk = pending.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, pending.size()));
+            // Only the id -> value side is cached: a read does not stamp last_used_at, so it must not feed encode
+            jdbcTemplate.query("SELECT id, value FROM click_dimension_values WHERE id IN (" +
+                            String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")",
+                    rs -> {
+                        valuesById.put(rs.getInt("id"), rs.getString("value"));
+                        values.put(rs.getInt("id"), rs.getString("value"));
+                    }, chunk.toArray());
+        }
+        return values;
+    }
+
+    /**
+     * Fills the decoded string fields of clicks loaded through JPA, with one lookup for the whole list.
+     */
+    public void decodeClicks(List<UrlClick> clicks) {
+        Map<Integer, String> values = decode(clicks.stream()
+                .flatMap(click -> Stream.of(click.getCountryId(), click.getCityId(),
+                        click.getUserAgentId(), click.getDeviceTypeId(), click.getBrowserId(),
+                        click.getOperatingSystemId(), click.getReferrerId()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet()));
+        for (UrlClick click : clicks) {
+            click.setCountry(lookup(values, click.getCountryId()));
+            click.setCity(lookup(values, click.getCityId()));
+            click.setUserAgent(lookup(values, click.getUserAgentId()));
+            click.setDeviceType(lookup(values, click.getDeviceTypeId()));
+            click.setBrowser(lookup(values, click.getBrowserId()));
+            click.setOperatingSystem(lookup(values, click.getOperatingSystemId()));
+            click.setReferrer(lookup(values, click.getReferrerId()));
+        }
+    }
+
+    /**
+     * Deletes values no url_clicks row references and no node has encoded within the cache TTL.
+     * One scan of url_clicks, so it runs with compaction, once raw rows have been trimmed.
+     */
+    public int pruneUnreferenced() {
+        if (!pruneEnabled || !legacyMigration.isDone() || legacyMigration.isCompletedExceptionally()) {
+            return 0;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minus(cacheTtl).minusHours(1);
+        String references = Arrays.stream(DIMENSIONS)
+                .map(column -> "c." + column[0] + "_id")
+                .collect(Collectors.joining(", "));
+        Integer pruned = transactionTemplate.execute(status -> {
+            // Every node compacts on the same schedule; one scan is enough
+            if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                    "SELECT pg_try_advisory_xact_lock(?)", Boolean.class, ADVISORY_LOCK_KEY))) {
+                return 0;
+            }
+            return jdbcTemplate.update("WITH referenced AS (" +
+                            "SELECT DISTINCT v FROM url_clicks c CROSS JOIN LATERAL unnest(ARRAY[" + references + "]) v " +
+                            "WHERE v IS NOT NULL) " +
+                            "DELETE FROM click_dimension_values d " +
+                            "WHERE COALESCE(d.last_used_at, '-infinity') < ? " +
+                            "AND NOT EXISTS (SELECT 1 FROM referenced r WHERE r.v = d.id)",
+                    Timestamp.valueOf(cutoff));
+        });
+        if (pruned != null && pruned > 0) {
+            log.info("Pruned {} unreferenced click dimension values", pruned);
+        }
+        return pruned != null ? pruned : 0;
+    }
+
+    private static String lookup(Map<Integer, String> values, Integer id) {
+        return id != null ? values.get(id) : null;
+    }
+
+    /**
+     * Converts url_clicks from text dimension columns to dictionary ids in id-range chunks, each
+     * its own transaction, then drops the text columns under a short lock. Run it once every node
+     * writes ids (this version), so no new text rows appear behind the chunks. Dropping a column
+     * does not shrink the heap; ClickPartitionManager rewrites the table afterwards.
+     */
+    private void migrateLegacyColumns() {
+        StringBuilder addColumns = new StringBuilder("ALTER TABLE url_clicks ");
+        for (int i = 0; i < DIMENSIONS.length; i++) {
+            addColumns.append(i > 0 ? ", " : "").append("ADD COLUMN IF NOT EXISTS ")
+                    .append(DIMENSIONS[i][0]).append("_id INTEGER");
+        }
+        jdbcTemplate.execute(addColumns.toString());
+
+        Map<String, Object> range = jdbcTemplate.queryForMap(
+                "SELECT COALESCE(MIN(id), 0) AS first_id, COALESCE(MAX(id), 0) AS last_id FROM url_clicks");
+        long firstId = ((Number) range.get("first_id")).longValue();
+        long lastId = ((Number) range.get("last_id")).longValue();
+        log.info("Converting url_clicks dimension columns to dictionary ids, ids {} to {}", firstId, lastId);
+
+        long rows = 0;
+        for (long from = firstId - 1; from < lastId; from += migrateChunkSize) {
+            long chunkStart = from;
+            long chunkEnd = Math.min(from + migrateChunkSize, lastId);
+            Integer updated = transactionTemplate.execute(status -> backfill(chunkStart, chunkEnd));
+            rows += updated != null ? updated : 0;
+        }
+
+        long backfilled = rows;
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.queryForObject("SELECT pg_advisory_xact_lock(?)::text", String.class, ADVISORY_LOCK_KEY);
+            if (!hasLegacyColumns()) {
+                return;
+            }
+            jdbcTemplate.execute("LOCK TABLE url_clicks IN ACCESS EXCLUSIVE MODE");
+            int tail = backfill(lastId, Long.MAX_VALUE);
+            jdbcTemplate.execute("ALTER TABLE url_clicks " + Arrays.stream(DIMENSIONS)
+                    .map(column -> "DROP COLUMN " + column[0])
+                    .collect(Collectors.joining(", ")));
+            log.info("url_clicks dimensions converted: {} rows backfilled, text columns dropped", backfilled + tail);
+        });
+    }
+
+    /**
+     * Adds the chunk's values to the dictionary and sets its id columns in one UPDATE ... FROM.
+     * Rows already holding the right ids are skipped, so a resumed run rewrites nothing twice.
+     */
+    private int backfill(long afterId, long upToId) {
+        String values = Arrays.stream(DIMENSIONS).map(column -> column[1]).collect(Collectors.joining(", "));
+        jdbcTemplate.update("INSERT INTO click_dimension_values (value, last_used_at) " +
+                "SELECT DISTINCT v, now() FROM url_clicks u CROSS JOIN LATERAL unnest(ARRAY[" + values + "]) v " +
+                "WHERE u.id > ? AND u.id <= ? AND v IS NOT NULL ON CONFLICT (value) DO NOTHING", afterId, upToId);
+
+        StringBuilder select = new StringBuilder("SELECT u.id, u.clicked_at");
+        StringBuilder joins = new StringBuilder();
+        StringBuilder set = new StringBuilder();
+        StringBuilder current = new StringBuilder();
+        StringBuilder resolved = new StringBuilder();
+        for (int i = 0; i < DIMENSIONS.length; i++) {
+            String column = DIMENSIONS[i][0];
+            String alias = "d" + i;
+            String separator = i > 0 ? ", " : "";
+            select.append(", ").append(alias).append(".id AS ").append(column).append("_id");
+            joins.append(" LEFT JOIN click_dimension_values ").append(alias)
+                    .append(" ON ").append(alias).append(".value = ").append(DIMENSIONS[i][1]);
+            set.append(separator).append(column).append("_id = m.").append(column).append("_id");
+            current.append(separator).append("c.").append(column).append("_id");
+            resolved.append(separator).append("m.").append(column).append("_id");
+        }
+        return jdbcTemplate.update("UPDATE url_clicks c SET " + set + " FROM (" + select +
+                        " FROM url_clicks u" + joins + " WHERE u.id > ? AND u.id <= ?) m " +
+                        "WHERE c.id = m.id AND c.clicked_at = m.clicked_at " +
+                        "AND (" + current + ") IS DISTINCT FROM (" + resolved + ")",
+                afterId, upToId);
+    }
+
+    private boolean hasLegacyColumns() {
+        Boolean exists = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM information_schema.columns " +
+                "WHERE table_name = 'url_clicks' AND table_schema = current_schema() AND column_name = 'country')",
+                Boolean.class);
+        return Boolean.TRUE.equals(exists);
+    }
+}
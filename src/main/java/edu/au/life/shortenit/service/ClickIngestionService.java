@@ -0,0 +1,208 @@
+package edu.au.life.shortenit.service;
+
+import edu.au.life.shortenit.dto.ClickEvent;
+import edu.au.life.shortenit.dto.GeoLocation;
+import edu.au.life.shortenit.entity.UrlClick;
+import edu.au.life.shortenit.util.UserAgentParser;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Click-ingestion pipeline. The redirect path only enqueues a raw {@link ClickEvent};
+ * background workers enrich it (GeoIP, user agent) and hand it to {@link ClickBatchWriter}.
+ */
+@Slf4j
+@Service
+public class ClickIngestionService {
+
+    public enum OverflowPolicy {
+        DROP_OLDEST, // evict the oldest queued event to make room
+        BLOCK,       // wait up to block-timeout-ms for room, then drop
+        SAMPLE       // above the high-water mark admit 1 in sample-rate events
+    }
+
+    private final ClickBatchWriter clickBatchWriter;
+    private final LocalGeoIpService localGeoIpService;
+    private final UserAgentParser userAgentParser;
+    private final ClickCountAccumulator clickCountAccumulator;
+
+    private final BlockingQueue<ClickEvent> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final int workerCount;
+    private final int batchSize;
+    private final long blockTimeoutMs;
+    private final int sampleRate;
+    private final int highWaterMark;
+
+    private final Counter droppedCounter;
+
+    private ExecutorService workers;
+    private volatile boolean running;
+
+    public ClickIngestionService(ClickBatchWriter clickBatchWriter,
+                                 ClickCountAccumulator clickCountAccumulator,
+                                 LocalGeoIpService localGeoIpService,
+                                 UserAgentParser userAgentParser,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.click-pipeline.queue-capacity:10000}") int queueCapacity,
+                                 @Value("${app.click-pipeline.workers:2}") int workerCount,
+                                 @Value("${app.click-pipeline.batch-size:500}") int batchSize,
+                                 @Value("${app.click-pipeline.overflow-policy:DROP_OLDEST}") OverflowPolicy overflowPolicy,
+                                 @Value("${app.click-pipeline.block-timeout-ms:50}") long blockTimeoutMs,
+                                 @Value("${app.click-pipeline.sample-rate:10}") int sampleRate) {
+        this.clickBatchWriter = clickBatchWriter;
+        this.localGeoIpService = localGeoIpService;
+        this.userAgentParser = userAgentParser;
+        this.clickCountAccumulator = clickCountAccumulator;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.workerCount = workerCount;
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutMs = blockTimeoutMs;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.highWaterMark = queueCapacity * 8 / 10;
+
+        Gauge.builder("clicks.queue.depth", queue, BlockingQueue::size)
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("clicks.dropped")
+                .tag("policy", overflowPolicy.name())
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        AtomicInteger threadIndex = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "click-ingest-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            workers.submit(this::runWorker);
+        }
+        log.info("Click ingestion started: {} workers, policy {}", workerCount, overflowPolicy);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Click workers did not drain in time, {} events left in queue", queue.size());
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Enqueues a click without blocking the caller (except under the BLOCK policy).
+     * Returns false if the event was dropped.
+     */
+    public boolean submit(ClickEvent event) {
+        boolean accepted = switch (overflowPolicy) {
+            case DROP_OLDEST -> offerDroppingOldest(event);
+            case BLOCK -> offerBlocking(event);
+            case SAMPLE -> offerSampled(event);
+        };
+        if (!accepted) {
+            droppedCounter.increment();
+        }
+        return accepted;
+    }
+
+    private boolean offerDroppingOldest(ClickEvent event) {
+        while (!queue.offer(event)) {
+            if (queue.poll() != null) {
+                droppedCounter.increment();
+            }
+        }
+        return true;
+    }
+
+    private boolean offerBlocking(ClickEvent event) {
+        try {
+            return queue.offer(event, blockTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean offerSampled(ClickEvent event) {
+        if (queue.size() >= highWaterMark && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return false;
+        }
+        return queue.offer(event);
+    }
+
+    private void runWorker() {
+        List<ClickEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                ClickEvent first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                persist(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Failed to persist {} click events", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void persist(List<ClickEvent> events) {
+        for (ClickEvent event : events) {
+            clickBatchWriter.add(event.urlId(), enrich(event));
+            clickCountAccumulator.increment(event.urlId());
+        }
+    }
+
+    private UrlClick enrich(ClickEvent event) {
+        UrlClick click = new UrlClick();
+        click.setClickedAt(event.clickedAt());
+        click.setIpAddress(event.ipAddress());
+
+        GeoLocation geoLocation = localGeoIpService.getLocation(event.ipAddress());
+        click.setCountry(geoLocation.getCountry());
+        click.setCity(geoLocation.getCity());
+
+        String userAgent = event.userAgent();
+        click.setUserAgent(userAgent);
+        UserAgentParser.Classification agent = userAgentParser.classify(userAgent);
+        click.setDeviceType(agent.deviceType());
+        click.setBrowser(agent.browser());
+        click.setOperatingSystem(agent.operatingSystem());
+
+        // Only the origin is kept: full referrers are near-unique and would flood the dictionary
+        click.setReferrer(ClickDimensionDictionary.referrerOrigin(event.referrer()));
+        return click;
+    }
+}
@@ -0,0 +1,393 @@
+package edu.au.life.shortenit.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps url_clicks as monthly range partitions on clicked_at (url_clicks_pYYYYMM plus a default
+ * partition for anything out of range) and creates partitions months-ahead of time.
+ * Range queries on clicked_at only touch the partitions they overlap.
+ * Converting an existing plain table is opt-in (app.click-partitions.migrate) and runs in the
+ * background; retention is applied by ClickCompactionService, which moves the watermark first.
+ */
+@Slf4j
+@Service
+public class ClickPartitionManager {
+
+    private static final String TABLE = "url_clicks";
+    private static final String TARGET_TABLE = "url_clicks_partitioned";
+    private static final String DEFAULT_PARTITION = "url_clicks_default";
+    private static final String PARTITION_PREFIX = "url_clicks_p";
+    private static final String INDEX = "idx_url_clicks_url_clicked_at";
+    private static final String TARGET_INDEX = "idx_url_clicks_partitioned_url_clicked_at";
+    private static final String CLICKED_AT_INDEX = "idx_url_clicks_clicked_at";
+    private static final String TARGET_CLICKED_AT_INDEX = "idx_url_clicks_partitioned_clicked_at";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+    // Serialises migration and maintenance across nodes
+    private static final long ADVISORY_LOCK_KEY = 0x75726c5f636c6bL;
+
+    private static final String COLUMNS = "id, url_id, clicked_at, ip_address, country_id, city_id, user_agent_id, " +
+            "device_type_id, browser_id, operating_system_id, referrer_id";
+    private static final String CREATE_TARGET_TABLE = "CREATE TABLE " + TARGET_TABLE + " (" +
+            "id BIGINT NOT NULL DEFAULT nextval('url_clicks_partitioned_id_seq'), " +
+            "url_id BIGINT NOT NULL REFERENCES urls (id), " +
+            "clicked_at TIMESTAMP(6) NOT NULL, " +
+            "ip_address VARCHAR(45), " +
+            "country_id INTEGER, " +
+            "city_id INTEGER, " +
+            "user_agent_id INTEGER, " +
+            "device_type_id INTEGER, " +
+            "browser_id INTEGER, " +
+            "operating_system_id INTEGER, " +
+            "referrer_id INTEGER, " +
+            // The partition key has to be part of the primary key
+            "CONSTRAINT url_clicks_partitioned_pkey PRIMARY KEY (id, clicked_at)" +
+            ") PARTITION BY RANGE (clicked_at)";
+    // Idempotent, so a resumed or concurrent copy of the same range is harmless
+    private static final String COPY_RANGE = "INSERT INTO " + TARGET_TABLE + " (" + COLUMNS + ") " +
+            "SELECT " + COLUMNS + " FROM " + TABLE + " WHERE id > ? AND id <= ? " +
+            "ON CONFLICT (id, clicked_at) DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ClickDimensionDictionary clickDimensionDictionary;
+    private final ExecutorService migrator = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "click-partition-migration");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${app.click-partitions.enabled:true}")
+    private boolean enabled;
+
+    // Converting an existing plain url_clicks copies every row; only done when asked for
+    @Value("${app.click-partitions.migrate:false}")
+    private boolean migrate;
+
+    @Value("${app.click-partitions.migrate-chunk-size:50000}")
+    private int migrateChunkSize;
+
+    @Value("${app.click-partitions.months-ahead:3}")
+    private int monthsAhead;
+
+    // 0 keeps every partition
+    @Value("${app.click-partitions.retention-months:0}")
+    private int retentionMonths;
+
+    public ClickPartitionManager(JdbcTemplate jdbcTemplate,
+                                 TransactionTemplate transactionTemplate,
+                                 ClickDimensionDictionary clickDimensionDictionary) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.clickDimensionDictionary = clickDimensionDictionary;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        boolean partitioned = isPartitioned();
+        if (partitioned) {
+            maintain();
+        } else if (!migrate) {
+            log.warn("url_clicks is not partitioned; set app.click-partitions.migrate=true to convert it");
+        }
+        // Rewriting url_clicks waits until no text dimension columns are left to lose
+        clickDimensionDictionary.legacyMigration().whenCompleteAsync((columnsDropped, error) -> {
+            try {
+                if (error != null) {
+                    if (!partitioned && migrate) {
+                        log.error("url_clicks partition migration waits for the dictionary migration");
+                    }
+                } else if (partitioned) {
+                    if (columnsDropped) {
+                        rewritePastPartitions();
+                    }
+                } else if (migrate) {
+                    // The copy only carries live columns, so it also reclaims dropped-column space
+                    migrate();
+                    maintain();
+                } else if (columnsDropped) {
+                    log.warn("url_clicks keeps the dropped dimension columns' space until it is rewritten: "
+                            + "enable app.click-partitions.migrate or run VACUUM FULL url_clicks");
+                }
+            } catch (Exception e) {
+                log.error("url_clicks partition migration failed; it resumes on the next start", e);
+            }
+        }, migrator);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        migrator.shutdownNow();
+    }
+
+    /**
+     * Creates the partitions for the current and next months-ahead months.
+     */
+    @Scheduled(cron = "${app.click-partitions.maintenance-cron:0 15 3 * * *}")
+    public void maintain() {
+        if (!enabled || !isPartitioned()) {
+            return;
+        }
+        YearMonth current = YearMonth.now();
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    lock();
+                    createPartition(TABLE, month);
+                });
+            } catch (Exception e) {
+                log.error("Failed to create click partition for {}", month, e);
+            }
+        }
+    }
+
+    /**
+     * Start of the oldest month kept under retention-months, or null when every partition is kept.
+     */
+    public LocalDateTime getRetentionCutoff() {
+        if (!enabled || retentionMonths <= 0) {
+            return null;
+        }
+        return YearMonth.now().minusMonths(retentionMonths).atDay(1).atStartOfDay();
+    }
+
+    private boolean isPartitioned() {
+        Boolean partitioned = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_class WHERE oid = to_regclass(?) AND relkind = 'p')",
+                Boolean.class, TABLE);
+        return Boolean.TRUE.equals(partitioned);
+    }
+
+    private boolean exists(String relation) {
+        Boolean exists = jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, relation);
+        return Boolean.TRUE.equals(exists);
+    }
+
+    /**
+     * Converts a plain url_clicks without blocking writers for the duration of the copy:
+     * builds url_clicks_partitioned alongside it, copies committed rows in id order in chunks that
+     * each commit on their own, then swaps the tables in one short transaction that only copies
+     * the rows written since the last pass. Every step is idempotent, so an interrupted run
+     * resumes from the highest id already copied.
+     */
+    private void migrate() {
+        transactionTemplate.executeWithoutResult(status -> {
+            lock();
+            if (isPartitioned() || exists(TARGET_TABLE)) {
+                return;
+            }
+            log.info("Creating {} for the url_clicks partition migration", TARGET_TABLE);
+            jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS url_clicks_partitioned_id_seq");
+            jdbcTemplate.execute(CREATE_TARGET_TABLE);
+            jdbcTemplate.execute("ALTER SEQUENCE url_clicks_partitioned_id_seq OWNED BY " + TARGET_TABLE + ".id");
+            jdbcTemplate.execute("CREATE TABLE " + DEFAULT_PARTITION + " PARTITION OF " + TARGET_TABLE + " DEFAULT");
+            jdbcTemplate.execute("CREATE INDEX " + TARGET_INDEX + " ON " + TARGET_TABLE + " (url_id, clicked_at)");
+            jdbcTemplate.execute("CREATE INDEX " + TARGET_CLICKED_AT_INDEX + " ON " + TARGET_TABLE + " (clicked_at)");
+
+            // Partitions for every month that has rows or will get them soon, so the copy lands in real partitions
+            Map<String, Object> range = jdbcTemplate.queryForMap(
+                    "SELECT MIN(clicked_at) AS first_click, MAX(clicked_at) AS last_click FROM " + TABLE);
+            YearMonth first = YearMonth.now();
+            YearMonth last = first.plusMonths(monthsAhead);
+            if (range.get("first_click") != null) {
+                YearMonth firstClick = YearMonth.from(((Timestamp) range.get("first_click")).toLocalDateTime());
+                YearMonth lastClick = YearMonth.from(((Timestamp) range.get("last_click")).toLocalDateTime());
+                first = firstClick.isBefore(first) ? firstClick : first;
+                last = lastClick.isAfter(last) ? lastClick : last;
+            }
+            for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+                createPartition(TARGET_TABLE, month);
+            }
+        });
+        if (isPartitioned()) {
+            return;
+        }
+
+        Long copiedUpTo = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(MAX(id), 0) FROM " + TARGET_TABLE, Long.class);
+        long lastId = copiedUpTo != null ? copiedUpTo : 0;
+        // Catch up in passes until what is left for the locked swap is less than a chunk
+        long boundary;
+        while ((boundary = committedBoundary()) - lastId > migrateChunkSize) {
+            lastId = copyUpTo(lastId, boundary);
+        }
+        swap();
+    }
+
+    /**
+     * Highest id in url_clicks once every transaction that could still commit a lower id has
+     * finished, so rows are never skipped by committing out of id order.
+     */
+    private long committedBoundary() {
+        Long boundary = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + TABLE, Long.class);
+        String horizon = jdbcTemplate.queryForObject("SELECT pg_snapshot_xmax(pg_current_snapshot())::text", String.class);
+        while (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT pg_snapshot_xmin(pg_current_snapshot()) >= ?::xid8", Boolean.class, horizon))) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for click writers", e);
+            }
+        }
+        return boundary != null ? boundary : 0;
+    }
+
+    // Copies (from, to] in chunks that each commit on their own; returns to
+    private long copyUpTo(long from, long to) {
+        long copied = 0;
+        long lastId = from;
+        while (lastId < to) {
+            long chunkStart = lastId;
+            long chunkEnd = Math.min(lastId + migrateChunkSize, to);
+            Integer rows = transactionTemplate.execute(status -> {
+                lock();
+                return jdbcTemplate.update(COPY_RANGE, chunkStart, chunkEnd);
+            });
+            copied += rows != null ? rows : 0;
+            lastId = chunkEnd;
+        }
+        log.info("url_clicks partition migration: {} rows copied, up to id {}", copied, to);
+        return to;
+    }
+
+    /**
+     * Copies the tail written since the last pass and swaps the tables. Writers wait on the lock
+     * only for the tail, not for the whole table.
+     */
+    private void swap() {
+        transactionTemplate.executeWithoutResult(status -> {
+            lock();
+            if (isPartitioned()) {
+                return;
+            }
+            jdbcTemplate.execute("LOCK TABLE " + TABLE + " IN ACCESS EXCLUSIVE MODE");
+            // No writer is in flight under the lock, so everything above the copied range is final
+            Long lastId = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(MAX(id), 0) FROM " + TARGET_TABLE, Long.class);
+            int tail = jdbcTemplate.update(COPY_RANGE, lastId, Long.MAX_VALUE);
+
+            Long nextId = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(MAX(id), 0) + 1 FROM " + TARGET_TABLE, Long.class);
+            jdbcTemplate.queryForObject("SELECT setval('url_clicks_partitioned_id_seq', ?, false)", Long.class, nextId);
+            jdbcTemplate.execute("DROP TABLE " + TABLE);
+            jdbcTemplate.execute("ALTER TABLE " + TARGET_TABLE + " RENAME TO " + TABLE);
+            jdbcTemplate.execute("ALTER INDEX " + TARGET_INDEX + " RENAME TO " + INDEX);
+            jdbcTemplate.execute("ALTER INDEX " + TARGET_CLICKED_AT_INDEX + " RENAME TO " + CLICKED_AT_INDEX);
+            log.info("url_clicks swapped for the partitioned table; {} rows copied under the lock", tail);
+        });
+    }
+
+    /**
+     * Rewrites the partitions of months already over, so the space of dropped columns is returned.
+     * Each VACUUM FULL locks one partition at a time; the current month and the default partition
+     * still take writes and are left alone, keeping their dead space until retention drops them.
+     */
+    private void rewritePastPartitions() {
+        YearMonth current = YearMonth.now();
+        for (String partition : partitions()) {
+            if (!partition.startsWith(PARTITION_PREFIX)
+                    || !YearMonth.parse(partition.substring(PARTITION_PREFIX.length()), SUFFIX).isBefore(current)) {
+                continue;
+            }
+            try {
+                jdbcTemplate.execute("VACUUM FULL " + partition);
+                log.info("Rewrote click partition {}", partition);
+            } catch (Exception e) {
+                log.error("Failed to rewrite click partition {}", partition, e);
+            }
+        }
+    }
+
+    private List<String> partitions() {
+        return jdbcTemplate.queryForList(
+                "SELECT c.relname::text FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                "WHERE i.inhparent = to_regclass(?) ORDER BY c.relname", String.class, TABLE);
+    }
+
+    /**
+     * Creates the partition of parent for one month if missing. Rows for that month already sitting
+     * in the default partition are moved into it first, since attaching over them would fail.
+     */
+    private void createPartition(String parent, YearMonth month) {
+        String name = PARTITION_PREFIX + month.format(SUFFIX);
+        if (exists(name)) {
+            return;
+        }
+        LocalDate from = month.atDay(1);
+        LocalDate to = month.plusMonths(1).atDay(1);
+        String bounds = "FOR VALUES FROM ('" + from + "') TO ('" + to + "')";
+
+        Boolean defaultHasRows = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION + " WHERE clicked_at >= ? AND clicked_at < ?)",
+                Boolean.class, Timestamp.valueOf(from.atStartOfDay()), Timestamp.valueOf(to.atStartOfDay()));
+        if (!Boolean.TRUE.equals(defaultHasRows)) {
+            jdbcTemplate.execute("CREATE TABLE " + name + " PARTITION OF " + parent + " " + bounds);
+        } else {
+            jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE " + parent + " INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+            // LIKE copies the parent's columns in order, so whole rows move as they are
+            int moved = jdbcTemplate.update("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION +
+                            " WHERE clicked_at >= ? AND clicked_at < ? RETURNING *) " +
+                            "INSERT INTO " + name + " SELECT * FROM moved",
+                    Timestamp.valueOf(from.atStartOfDay()), Timestamp.valueOf(to.atStartOfDay()));
+            jdbcTemplate.execute("ALTER TABLE " + parent + " ATTACH PARTITION " + name + " " + bounds);
+            log.info("Moved {} clicks from the default partition into {}", moved, name);
+        }
+        log.info("Created click partition {}", name);
+    }
+
+    /**
+     * Drops monthly partitions that end on or before the first day of cutoff and returns how many.
+     * Only for ClickCompactionService, which must have moved the watermark past cutoff first:
+     * otherwise a rollup rebuild would recount those months from nothing.
+     */
+    int dropPartitionsBefore(YearMonth cutoff) {
+        if (!enabled) {
+            return 0;
+        }
+        int dropped = 0;
+        for (String partition : partitions()) {
+            if (!partition.startsWith(PARTITION_PREFIX)) {
+                continue;
+            }
+            YearMonth month = YearMonth.parse(partition.substring(PARTITION_PREFIX.length()), SUFFIX);
+            if (month.isBefore(cutoff)) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        lock();
+                        jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+                    });
+                    dropped++;
+                    log.info("Dropped click partition {}", partition);
+                } catch (Exception e) {
+                    log.error("Failed to drop click partition {}", partition, e);
+                }
+            }
+        }
+        return dropped;
+    }
+
+    private void lock() {
+        jdbcTemplate.queryForObject("SELECT pg_advisory_xact_lock(?)::text", String.class, ADVISORY_LOCK_KEY);
+    }
+}
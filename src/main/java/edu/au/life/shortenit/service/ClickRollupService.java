@@ -0,0 +1,191 @@
+package edu.au.life.shortenit.service;
+
+import edu.au.life.shortenit.entity.UrlClick;
+import edu.au.life.shortenit.entity.UrlClickRollup.Dimension;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maintains url_click_rollups: hourly per-dimension click counters updated as clicks are written,
+ * so analytics can be built from buckets instead of scanning raw url_clicks rows.
+ */
+@Slf4j
+@Service
+public class ClickRollupService {
+
+    private static final String UPSERT_PREFIX = "INSERT INTO url_click_rollups " +
+            "(url_id, bucket_start, dimension, dimension_value, clicks) VALUES ";
+    private static final String UPSERT_SUFFIX = " ON CONFLICT (url_id, bucket_start, dimension, dimension_value) " +
+            "DO UPDATE SET clicks = url_click_rollups.clicks + EXCLUDED.clicks";
+    private static final int MAX_ROWS_PER_STATEMENT = 6000;
+
+    // Every branch is bounded by clicked_at >= ?: buckets behind the compaction watermark have no raw rows left.
+    // Dimension values are stored as dictionary ids and joined back to text here.
+    private static final String REBUILD_SQL =
+            "INSERT INTO url_click_rollups (url_id, bucket_start, dimension, dimension_value, clicks) " +
+            "SELECT url_id, date_trunc('hour', clicked_at), 'TOTAL', '', COUNT(*) FROM url_clicks " +
+            "WHERE clicked_at >= ? GROUP BY url_id, date_trunc('hour', clicked_at) " +
+            "UNION ALL SELECT c.url_id, date_trunc('hour', c.clicked_at), 'COUNTRY', d.value, COUNT(*) FROM url_clicks c " +
+            "JOIN click_dimension_values d ON d.id = c.country_id " +
+            "WHERE c.clicked_at >= ? GROUP BY c.url_id, date_trunc('hour', c.clicked_at), d.value " +
+            "UNION ALL SELECT c.url_id, date_trunc('hour', c.clicked_at), 'CITY', ci.value || '|' || COALESCE(co.value, 'null'), COUNT(*) " +
+            "FROM url_clicks c JOIN click_dimension_values ci ON ci.id = c.city_id " +
+            "LEFT JOIN click_dimension_values co ON co.id = c.country_id WHERE c.clicked_at >= ? " +
+            "GROUP BY c.url_id, date_trunc('hour', c.clicked_at), ci.value || '|' || COALESCE(co.value, 'null') " +
+            "UNION ALL SELECT c.url_id, date_trunc('hour', c.clicked_at), 'DEVICE', COALESCE(d.value, 'unknown'), COUNT(*) " +
+            "FROM url_clicks c LEFT JOIN click_dimension_values d ON d.id = c.device_type_id WHERE c.clicked_at >= ? " +
+            "GROUP BY c.url_id, date_trunc('hour', c.clicked_at), COALESCE(d.value, 'unknown') " +
+            "UNION ALL SELECT c.url_id, date_trunc('hour', c.clicked_at), 'BROWSER', d.value, COUNT(*) FROM url_clicks c " +
+            "JOIN click_dimension_values d ON d.id = c.browser_id " +
+            "WHERE c.clicked_at >= ? GROUP BY c.url_id, date_trunc('hour', c.clicked_at), d.value " +
+            "UNION ALL SELECT c.url_id, date_trunc('hour', c.clicked_at), 'REFERRER', d.value, COUNT(*) FROM url_clicks c " +
+            "JOIN click_dimension_values d ON d.id = c.referrer_id " +
+            "WHERE c.clicked_at >= ? GROUP BY c.url_id, date_trunc('hour', c.clicked_at), d.value";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ClickCompactionService clickCompactionService;
+
+    @Value("${app.rollups.backfill-on-startup:true}")
+    private boolean backfillOnStartup;
+
+    public ClickRollupService(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                              ClickCompactionService clickCompactionService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.clickCompactionService = clickCompactionService;
+    }
+
+    /**
+     * Adds the given clicks to their hourly buckets. Must run in the same transaction
+     * as the url_clicks insert so rollups and raw rows never diverge.
+     */
+    public void record(List<ClickBatchWriter.PendingClick> rows) {
+        // Sorted keys give concurrent writers a consistent lock order
+        Map<RollupKey, Long> counts = new TreeMap<>(RollupKey.ORDER);
+        for (ClickBatchWriter.PendingClick row : rows) {
+            UrlClick click = row.click();
+            LocalDateTime bucket = click.getClickedAt().truncatedTo(ChronoUnit.HOURS);
+
+            add(counts, row.urlId(), bucket, Dimension.TOTAL, "");
+            if (click.getCountry() != null) {
+                add(counts, row.urlId(), bucket, Dimension.COUNTRY, click.getCountry());
+            }
+            if (click.getCity() != null) {
+                add(counts, row.urlId(), bucket, Dimension.CITY, click.getCity() + "|" + click.getCountry());
+            }
+            add(counts, row.urlId(), bucket, Dimension.DEVICE,
+                    click.getDeviceType() != null ? click.getDeviceType() : "unknown");
+            if (click.getBrowser() != null) {
+                add(counts, row.urlId(), bucket, Dimension.BROWSER, click.getBrowser());
+            }
+            if (click.getReferrer() != null && !click.getReferrer().isEmpty()) {
+                add(counts, row.urlId(), bucket, Dimension.REFERRER, truncate(click.getReferrer(), 500));
+            }
+        }
+
+        List<Map.Entry<RollupKey, Long>> entries = new ArrayList<>(counts.entrySet());
+        for (int from = 0; from < entries.size(); from += MAX_ROWS_PER_STATEMENT) {
+            upsert(entries.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, entries.size())));
+        }
+    }
+
+    /**
+     * Rebuilds the rollups from url_clicks. The exclusive lock makes concurrent click writers
+     * wait, so clicks committed after the rebuild snapshot are added on top rather than lost.
+     * Buckets before the compaction watermark are left alone; their raw rows are gone.
+     * Commits the backfill-complete marker together with the rebuilt buckets.
+     */
+    public int rebuild() {
+        log.info("Rebuilding click rollups from url_clicks");
+        Integer rows = transactionTemplate.execute(status -> {
+            jdbcTemplate.execute("LOCK TABLE url_click_rollups IN EXCLUSIVE MODE");
+            return rebuildLocked();
+        });
+        log.info("Click rollups rebuilt: {} buckets", rows);
+        return rows != null ? rows : 0;
+    }
+
+    /**
+     * Rebuilds once per database: clicks written before this version (or flushed by another node
+     * before this one was ready) only reach the rollups through a rebuild, so the decision rests
+     * on the persisted marker rather than on whether url_click_rollups has any rows.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfNeeded() {
+        if (!backfillOnStartup || clickCompactionService.isRollupBackfillComplete()) {
+            return;
+        }
+        log.info("Backfilling click rollups from url_clicks");
+        Integer rows = transactionTemplate.execute(status -> {
+            jdbcTemplate.execute("LOCK TABLE url_click_rollups IN EXCLUSIVE MODE");
+            // Another node may have finished the backfill while this one waited for the lock
+            if (clickCompactionService.isRollupBackfillComplete()) {
+                return null;
+            }
+            return rebuildLocked();
+        });
+        if (rows != null) {
+            log.info("Click rollups backfilled: {} buckets", rows);
+        }
+    }
+
+    // Caller holds the url_click_rollups lock inside its transaction
+    private int rebuildLocked() {
+        Timestamp from = Timestamp.valueOf(clickCompactionService.getCompactedBefore());
+        jdbcTemplate.update("DELETE FROM url_click_rollups WHERE bucket_start >= ?", from);
+        int rows = jdbcTemplate.update(REBUILD_SQL, from, from, from, from, from, from);
+        clickCompactionService.markRollupBackfillComplete();
+        return rows;
+    }
+
+    private void upsert(List<Map.Entry<RollupKey, Long>> entries) {
+        StringBuilder sql = new StringBuilder(UPSERT_PREFIX);
+        Object[] args = new Object[entries.size() * 5];
+        int i = 0;
+        for (Map.Entry<RollupKey, Long> entry : entries) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append("(?, ?, ?, ?, ?)");
+            RollupKey key = entry.getKey();
+            args[i++] = key.urlId();
+            args[i++] = Timestamp.valueOf(key.bucketStart());
+            args[i++] = key.dimension().name();
+            args[i++] = key.value();
+            args[i++] = entry.getValue();
+        }
+        sql.append(UPSERT_SUFFIX);
+        jdbcTemplate.update(sql.toString(), args);
+    }
+
+    private static void add(Map<RollupKey, Long> counts, Long urlId, LocalDateTime bucket,
+                            Dimension dimension, String value) {
+        counts.merge(new RollupKey(urlId, bucket, dimension, value), 1L, Long::sum);
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+
+    private record RollupKey(Long urlId, LocalDateTime bucketStart, Dimension dimension, String value) {
+        static final Comparator<RollupKey> ORDER = Comparator.comparing(RollupKey::urlId)
+                .thenComparing(RollupKey::bucketStart)
+                .thenComparing(RollupKey::dimension)
+                .thenComparing(RollupKey::value);
+    }
+}
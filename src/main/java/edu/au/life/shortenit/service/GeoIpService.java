@@ -1,6 +1,7 @@
 package edu.au.life.shortenit.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import edu.au.life.shortenit.util.IpClassifier;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -13,15 +14,13 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 public class GeoIpService {
     private final RestTemplate restTemplate = new RestTemplate();
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final IpClassifier ipClassifier;
 
     private static final String GEO_API_URL = "https://ip-api.com/json/";
 
     public GeoLocation getGeoLocation(String ipAddress) {
-        // Handle localhost/private IPs
-        if (ipAddress == null || ipAddress.isEmpty() ||
-                ipAddress.equals("127.0.0.1") || ipAddress.equals("0:0:0:0:0:0:0:1") ||
-                ipAddress.startsWith("192.168.") || ipAddress.startsWith("10.") ||
-                ipAddress.equals("::1")) {
+        // Handle localhost/private IPs, and anything that would not be a valid path segment
+        if (!ipClassifier.isPublic(ipAddress)) {
             return new GeoLocation("Unknown", "Unknown");
         }
 
@@ -1,14 +1,23 @@
 package edu.au.life.shortenit.service;
 
+import edu.au.life.shortenit.dto.VerifiedToken;
+import edu.au.life.shortenit.util.BoundedCache;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Map;
 
 @Service
@@ -23,6 +32,28 @@ public class JwtService {
     @Value("${jwt.refresh-token-expiration}")
     private long refreshTokenExpiration;
 
+    // Built once from the secret; both are immutable and thread-safe
+    private SecretKey signingKey;
+    private JwtParser parser;
+
+    // Recently verified tokens by SHA-256 of the token, each kept no longer than its exp
+    private final BoundedCache<String, VerifiedToken> verifiedTokens;
+
+    public JwtService(MeterRegistry meterRegistry,
+                      @Value("${jwt.cache.max-size:10000}") int cacheMaxSize,
+                      @Value("${jwt.cache.ttl-seconds:300}") long cacheTtlSeconds) {
+        this.verifiedTokens = new BoundedCache<>(cacheMaxSize, Duration.ofSeconds(cacheTtlSeconds));
+        this.verifiedTokens.registerMetrics(meterRegistry, "verified-jwts");
+    }
+
+    @PostConstruct
+    void init() {
+        signingKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parser()
+                .verifyWith(signingKey)
+                .build();
+    }
+
     public String generateAccessToken(Long userId, String email, String role) {
         Map<String, Object> claims = new HashMap<>();
         claims.put("userId", userId);
@@ -59,6 +90,31 @@ public class JwtService {
         return accessTokenExpiration;
     }
 
+    /**
+     * Verifies the token once and returns its claims. Tokens seen recently are served
+     * from cache without another signature check.
+     *
+     * @throws JwtException if the token is malformed, forged or expired
+     */
+    public VerifiedToken verify(String token) {
+        String digest = sha256(token);
+        VerifiedToken cached = verifiedTokens.get(digest);
+        if (cached != null && !cached.isExpired()) {
+            return cached;
+        }
+
+        Claims claims = extractAllClaims(token);
+        VerifiedToken verified = new VerifiedToken(
+                claims.get("userId", Long.class),
+                claims.getSubject(),
+                claims.get("role", String.class),
+                claims.getExpiration() != null ? claims.getExpiration().toInstant() : null);
+        if (verified.expiresAt() != null) {
+            verifiedTokens.put(digest, verified, Duration.between(Instant.now(), verified.expiresAt()));
+        }
+        return verified;
+    }
+
     public String extractEmail(String token) {
         return extractAllClaims(token).getSubject();
     }
@@ -85,15 +141,21 @@ public class JwtService {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())  // Changed from setSigningKey()
-                .build()
-                .parseSignedClaims(token)     // Changed from parseClaimsJws()
-                .getPayload();                 // Changed from getBody()
+        return parser
+                .parseSignedClaims(token)
+                .getPayload();
     }
 
     private SecretKey getSigningKey() {
-        byte[] keyBytes = secret.getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
+        return signingKey;
+    }
+
+    private static String sha256(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
 }
\ No newline at end of file
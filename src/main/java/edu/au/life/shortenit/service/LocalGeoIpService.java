@@ -1,9 +1,15 @@
 package edu.au.life.shortenit.service;
 
+import com.maxmind.db.CHMCache;
+import com.maxmind.db.Reader;
 import com.maxmind.geoip2.DatabaseReader;
 import com.maxmind.geoip2.exception.GeoIp2Exception;
 import com.maxmind.geoip2.model.CityResponse;
 import edu.au.life.shortenit.dto.GeoLocation;
+import edu.au.life.shortenit.util.BoundedCache;
+import edu.au.life.shortenit.util.IpClassifier;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
@@ -11,34 +17,58 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class LocalGeoIpService {
-    private DatabaseReader databaseReader;
+    // Swapped atomically on reload; lookups pin the handle they read until they finish
+    private final AtomicReference<ReaderHandle> currentReader = new AtomicReference<>();
+    private final AtomicLong buildEpochSeconds = new AtomicLong();
+    private volatile long loadedLastModified;
+
+    // Resolved locations by IP; clicks from the same address tend to arrive in bursts
+    private BoundedCache<String, GeoLocation> locationCache;
 
     @Value("${geoip.database.path}")
     private String databasePath;
 
+    @Value("${geoip.cache.max-size:50000}")
+    private int cacheMaxSize;
+
+    @Value("${geoip.cache.ttl-seconds:3600}")
+    private long cacheTtlSeconds;
+
+    @Value("${geoip.reload.enabled:true}")
+    private boolean reloadEnabled;
+
     private final ResourceLoader resourceLoader;
+    private final MeterRegistry meterRegistry;
+    private final IpClassifier ipClassifier;
 
     @PostConstruct
     public void init() {
+        locationCache = new BoundedCache<>(cacheMaxSize, Duration.ofSeconds(cacheTtlSeconds));
+        locationCache.registerMetrics(meterRegistry, "geoip-locations");
+        Gauge.builder("geoip.database.build.timestamp", buildEpochSeconds, AtomicLong::get)
+                .description("Build date of the loaded GeoIP database, epoch seconds")
+                .register(meterRegistry);
+
         try {
             log.info("Loading GeoIP database from : {}", databasePath);
-            Resource resource = resourceLoader.getResource(databasePath);
-            InputStream inputStream = resource.getInputStream();
-
-            // Create database reader
-            databaseReader = new DatabaseReader.Builder(inputStream).build();
-
-            log.info("GeoIP database loaded successfully");
+            swapIn(loadReader(resourceLoader.getResource(databasePath)));
         } catch (IOException e) {
             log.error("Failed to load GeoIP database from path : {}. Error: {}",
                     databasePath, e.getMessage());
@@ -46,14 +76,85 @@ public class LocalGeoIpService {
         }
     }
 
+    /**
+     * Reloads the database when the file on disk has changed. The new reader is built on this
+     * scheduler thread and swapped in atomically; the old one closes once its in-flight lookups finish.
+     * Cached locations are kept and age out by TTL, so a reload does not cause a burst of lookups.
+     */
+    @Scheduled(fixedDelayString = "${geoip.reload.interval-ms:300000}",
+            initialDelayString = "${geoip.reload.interval-ms:300000}")
+    public void reloadIfChanged() {
+        if (!reloadEnabled) {
+            return;
+        }
+        try {
+            Resource resource = resourceLoader.getResource(databasePath);
+            if (!resource.isFile() || resource.lastModified() == loadedLastModified) {
+                return;
+            }
+            log.info("GeoIP database changed on disk, reloading from : {}", databasePath);
+            swapIn(loadReader(resource));
+        } catch (IOException e) {
+            log.error("GeoIP reload failed, keeping the current database", e);
+        }
+    }
+
     @PreDestroy
     public void cleanup() {
-        if (databaseReader != null) {
-            try {
-                databaseReader.close();
-                log.info("GeoIP database closed successfully");
-            } catch (IOException e) {
-                log.error("Error closing GeoIP database", e);
+        ReaderHandle handle = currentReader.getAndSet(null);
+        if (handle != null) {
+            handle.retire();
+            log.info("GeoIP database closed successfully");
+        }
+    }
+
+    private ReaderHandle loadReader(Resource resource) throws IOException {
+        long lastModified = resource.isFile() ? resource.lastModified() : 0L;
+        DatabaseReader reader;
+        if (resource.isFile()) {
+            // Memory-mapped: the OS page cache holds the database, not the Java heap
+            reader = new DatabaseReader.Builder(resource.getFile())
+                    .fileMode(Reader.FileMode.MEMORY_MAPPED)
+                    .withCache(new CHMCache())
+                    .build();
+        } else {
+            // e.g. packed inside the jar; the stream has to be read onto the heap
+            try (InputStream inputStream = resource.getInputStream()) {
+                reader = new DatabaseReader.Builder(inputStream)
+                        .withCache(new CHMCache())
+                        .build();
+            }
+        }
+        return new ReaderHandle(reader, lastModified);
+    }
+
+    private void swapIn(ReaderHandle handle) {
+        ReaderHandle previous = currentReader.getAndSet(handle);
+        loadedLastModified = handle.lastModified;
+
+        Date buildDate = handle.reader.getMetadata().getBuildDate();
+        buildEpochSeconds.set(buildDate.toInstant().getEpochSecond());
+        log.info("GeoIP database loaded successfully: {} built {} ({})",
+                handle.reader.getMetadata().getDatabaseType(), buildDate.toInstant(),
+                handle.lastModified != 0 ? "memory-mapped" : "in heap");
+
+        if (previous != null) {
+            previous.retire();
+        }
+    }
+
+    /**
+     * Pins the current reader, or returns null if none is loaded. Retries if the handle read
+     * was retired by a concurrent reload.
+     */
+    private ReaderHandle acquireReader() {
+        while (true) {
+            ReaderHandle handle = currentReader.get();
+            if (handle == null) {
+                return null;
+            }
+            if (handle.acquire()) {
+                return handle;
             }
         }
     }
@@ -64,18 +165,40 @@ public class LocalGeoIpService {
             return new GeoLocation("Unknown", "Unknown");
         }
 
-        // handle localhost and private ips
-        if (isLocalOrPrivateIp(ipAddress)) {
-            log.debug("Local or private IP detected: {} ", ipAddress);
+        // handle localhost, private and other reserved ips, and anything that is not an ip literal
+        if (!ipClassifier.isPublic(ipAddress)) {
+            log.debug("Local, private or invalid IP detected: {} ", ipAddress);
             return new GeoLocation("Unknown", "Unknown");
         }
 
+        GeoLocation cached = locationCache.get(ipAddress);
+        if (cached != null) {
+            return cached;
+        }
+
         // database not loaded
-        if (databaseReader == null) {
+        ReaderHandle handle = acquireReader();
+        if (handle == null) {
             log.debug("Database reader not initialized, returning Unknown");
             return new GeoLocation("Unknown", "Unknown");
         }
 
+        try {
+            GeoLocation location = lookup(handle.reader, ipAddress);
+            if (location != null) {
+                locationCache.put(ipAddress, location);
+                return location;
+            }
+            return new GeoLocation("Unknown", "Unknown");
+        } finally {
+            handle.release();
+        }
+    }
+
+    /**
+     * Queries the database. Returns null on errors so that transient failures are not cached.
+     */
+    private GeoLocation lookup(DatabaseReader databaseReader, String ipAddress) {
         try {
             // convert ip string to InetAddress
             InetAddress inetAddress = InetAddress.getByName(ipAddress);
@@ -97,36 +220,58 @@ public class LocalGeoIpService {
             return new GeoLocation("Unknown", "Unknown");
         } catch (IOException e) {
             log.error("Error querying GeoIP database for IP: {}", ipAddress, e);
-            return new GeoLocation("Unknown", "Unknown");
+            return null;
         } catch (Exception e) {
             log.error("Unexpected error getting location for IP: {}", ipAddress, e);
-            return new GeoLocation("Unknown", "Unknown");
+            return null;
         }
     }
 
-    private boolean isLocalOrPrivateIp(String ip) {
-        return ip.equals("127.0.0.1")
-                || ip.equals("::1")
-                || ip.equals("0:0:0:0:0:0:0:1")
-                || ip.startsWith("192.168.")
-                || ip.startsWith("10.")
-                || ip.startsWith("172.16.")
-                || ip.startsWith("172.17.")
-                || ip.startsWith("172.18.")
-                || ip.startsWith("172.19.")
-                || ip.startsWith("172.20.")
-                || ip.startsWith("172.21.")
-                || ip.startsWith("172.22.")
-                || ip.startsWith("172.23.")
-                || ip.startsWith("172.24.")
-                || ip.startsWith("172.25.")
-                || ip.startsWith("172.26.")
-                || ip.startsWith("172.27.")
-                || ip.startsWith("172.28.")
-                || ip.startsWith("172.29.")
-                || ip.startsWith("172.30.")
-                || ip.startsWith("172.31.");
-    }
+    /**
+     * A reader plus the count of lookups using it, so a replaced reader is closed only after they drain.
+     */
+    private static final class ReaderHandle {
+        private final DatabaseReader reader;
+        private final long lastModified;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile boolean retired;
 
+        private ReaderHandle(DatabaseReader reader, long lastModified) {
+            this.reader = reader;
+            this.lastModified = lastModified;
+        }
+
+        boolean acquire() {
+            inFlight.incrementAndGet();
+            if (retired) {
+                release();
+                return false;
+            }
+            return true;
+        }
+
+        void release() {
+            if (inFlight.decrementAndGet() == 0 && retired) {
+                close();
+            }
+        }
 
+        void retire() {
+            retired = true;
+            if (inFlight.get() == 0) {
+                close();
+            }
+        }
+
+        private void close() {
+            if (closed.compareAndSet(false, true)) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    log.error("Error closing GeoIP database", e);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,237 @@
+package edu.au.life.shortenit.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Hands out auto-generated short codes from a local, lock-free pool.
+ * Codes are reserved a block at a time from the short_code_seq sequence, so they are unique
+ * across nodes without a per-create existence check. Each sequence value is scrambled by a keyed
+ * Feistel permutation over the 8-character base62 space, so consecutive creates do not yield
+ * guessable neighbours, and written as two halves of four joined by an underscore. Custom aliases
+ * cannot contain an underscore and the old random generator never produced one, so no other code
+ * can ever equal a generated one. The pool refills in the background when it drops below the
+ * low-water mark.
+ */
+@Slf4j
+@Component
+public class ShortCodeAllocator {
+
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    private static final int DIGITS = 8;
+    private static final long CODE_SPACE = pow(ALPHABET.length(), DIGITS); // 62^8, just under 2^48
+    private static final char SEPARATOR = '_';
+    private static final int SEPARATOR_POSITION = DIGITS / 2;
+    private static final int CODE_LENGTH = DIGITS + 1;
+    private static final int HALF_BITS = 24;
+    private static final long HALF_MASK = (1L << HALF_BITS) - 1;
+    private static final int ROUNDS = 4;
+    private static final int MIN_SCRAMBLE_KEY_LENGTH = 32;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int blockSize;
+    private final int lowWaterMark;
+    private final long[] roundKeys = new long[ROUNDS];
+
+    private final ConcurrentLinkedQueue<String> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger poolSize = new AtomicInteger();
+    private final AtomicBoolean refilling = new AtomicBoolean();
+    private final ExecutorService refiller = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "short-code-refill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ShortCodeAllocator(JdbcTemplate jdbcTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.short-code.block-size:1000}") int blockSize,
+                              @Value("${app.short-code.low-water-mark:200}") int lowWaterMark,
+                              @Value("${app.short-code.scramble-key}") String scrambleKey) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.blockSize = blockSize;
+        this.lowWaterMark = Math.min(lowWaterMark, blockSize);
+        deriveRoundKeys(scrambleKey, roundKeys);
+        Gauge.builder("short-codes.pool.size", poolSize, AtomicInteger::get)
+                .register(meterRegistry);
+    }
+
+    /**
+     * True for codes in the generated shape (four base62 characters, an underscore, four more).
+     * Alias validation already rules out underscores; callers check this too so that stays true
+     * if the alias pattern is ever widened.
+     */
+    public static boolean isAutoCodeShape(String code) {
+        if (code == null || code.length() != CODE_LENGTH || code.charAt(SEPARATOR_POSITION) != SEPARATOR) {
+            return false;
+        }
+        for (int i = 0; i < CODE_LENGTH; i++) {
+            if (i != SEPARATOR_POSITION && ALPHABET.indexOf(code.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @PostConstruct
+    public void init() {
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS short_code_seq");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refiller.shutdownNow();
+    }
+
+    /**
+     * Takes one code from the pool; only touches the database if the pool has run dry.
+     */
+    public String next() {
+        String code;
+        while ((code = pool.poll()) == null) {
+            refill();
+        }
+        if (poolSize.decrementAndGet() < lowWaterMark) {
+            scheduleRefill();
+        }
+        return code;
+    }
+
+    /**
+     * Takes exactly count codes, reserving whatever the pool cannot cover in one round trip.
+     */
+    public List<String> next(int count) {
+        List<String> codes = new ArrayList<>(count);
+        String code;
+        while (codes.size() < count && (code = pool.poll()) != null) {
+            poolSize.decrementAndGet();
+            codes.add(code);
+        }
+        if (codes.size() < count) {
+            codes.addAll(reserve(count - codes.size()));
+        }
+        if (poolSize.get() < lowWaterMark) {
+            scheduleRefill();
+        }
+        return codes;
+    }
+
+    private void scheduleRefill() {
+        if (refilling.compareAndSet(false, true)) {
+            try {
+                refiller.execute(() -> {
+                    try {
+                        refill();
+                    } catch (Exception e) {
+                        log.warn("Background short code refill failed", e);
+                    } finally {
+                        refilling.set(false);
+                    }
+                });
+            } catch (Exception e) {
+                refilling.set(false);
+            }
+        }
+    }
+
+    private void refill() {
+        List<String> codes = reserve(blockSize);
+        pool.addAll(codes);
+        poolSize.addAndGet(codes.size());
+    }
+
+    /**
+     * Reserves count sequence values and encodes them. No existence check is needed: nothing but
+     * this allocator writes codes of the generated shape.
+     */
+    private List<String> reserve(int count) {
+        List<Long> values = jdbcTemplate.queryForList(
+                "SELECT nextval('short_code_seq') FROM generate_series(1, ?)", Long.class, count);
+        return values.stream()
+                .map(value -> encode(scramble(value % CODE_SPACE)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Round keys are HMAC-SHA256(key, "short-code-round-" + i). The key has no default: anyone
+     * holding it can replay the permutation over the sequence and enumerate issued codes.
+     */
+    static void deriveRoundKeys(String scrambleKey, long[] roundKeys) {
+        if (scrambleKey == null || scrambleKey.length() < MIN_SCRAMBLE_KEY_LENGTH) {
+            throw new IllegalStateException("app.short-code.scramble-key must be set to at least "
+                    + MIN_SCRAMBLE_KEY_LENGTH + " characters");
+        }
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(scrambleKey.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            for (int i = 0; i < roundKeys.length; i++) {
+                byte[] block = mac.doFinal(("short-code-round-" + i).getBytes(StandardCharsets.US_ASCII));
+                roundKeys[i] = ByteBuffer.wrap(block).getLong();
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    // Feistel permutation on 48 bits, cycle-walked back into [0, CODE_SPACE): a bijection on the code space
+    long scramble(long value) {
+        long result = value;
+        do {
+            long left = result >>> HALF_BITS;
+            long right = result & HALF_MASK;
+            for (int i = 0; i < ROUNDS; i++) {
+                long next = left ^ round(right, roundKeys[i]);
+                left = right;
+                right = next;
+            }
+            result = (left << HALF_BITS) | right;
+        } while (result >= CODE_SPACE);
+        return result;
+    }
+
+    private static long round(long half, long key) {
+        long h = (half ^ key) * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 29;
+        return h & HALF_MASK;
+    }
+
+    static String encode(long value) {
+        char[] chars = new char[CODE_LENGTH];
+        chars[SEPARATOR_POSITION] = SEPARATOR;
+        for (int i = CODE_LENGTH - 1; i >= 0; i--) {
+            if (i == SEPARATOR_POSITION) {
+                continue;
+            }
+            chars[i] = ALPHABET.charAt((int) (value % ALPHABET.length()));
+            value /= ALPHABET.length();
+        }
+        return new String(chars);
+    }
+
+    private static long pow(int base, int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= base;
+        }
+        return result;
+    }
+}
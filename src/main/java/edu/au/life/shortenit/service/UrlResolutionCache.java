@@ -0,0 +1,72 @@
+package edu.au.life.shortenit.service;
+
+import edu.au.life.shortenit.dto.ResolvedUrl;
+import edu.au.life.shortenit.repository.UrlRepository;
+import edu.au.life.shortenit.util.BoundedCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Code -> destination cache for the /s/{code} redirect path.
+ * Holds only what the redirect needs, so a hit never touches the database.
+ */
+@Component
+public class UrlResolutionCache {
+
+    private final UrlRepository urlRepository;
+    private final BoundedCache<String, ResolvedUrl> cache;
+
+    public UrlResolutionCache(UrlRepository urlRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.redirect-cache.max-size:10000}") int maxSize,
+                              @Value("${app.redirect-cache.ttl-seconds:60}") long ttlSeconds) {
+        this.urlRepository = urlRepository;
+        this.cache = new BoundedCache<>(maxSize, Duration.ofSeconds(ttlSeconds));
+        this.cache.registerMetrics(meterRegistry, "url-resolution");
+    }
+
+    public Optional<ResolvedUrl> resolve(String code) {
+        ResolvedUrl resolved = cache.get(code);
+        if (resolved != null) {
+            return Optional.of(resolved);
+        }
+
+        Optional<ResolvedUrl> loaded = urlRepository.findResolvedByCode(code);
+        loaded.ifPresent(value -> cache.put(code, value));
+        return loaded;
+    }
+
+    /**
+     * Evicts the code now and again once the surrounding transaction commits,
+     * so a concurrent redirect cannot re-populate the entry with pre-commit data.
+     */
+    public void invalidate(String code) {
+        cache.invalidate(code);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidate(code);
+                }
+            });
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidateAll();
+                }
+            });
+        }
+    }
+}
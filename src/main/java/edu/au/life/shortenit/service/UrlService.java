@@ -1,6 +1,12 @@
 package edu.au.life.shortenit.service;
 
-import edu.au.life.shortenit.dto.GeoLocation;
+import edu.au.life.shortenit.dto.ClickEvent;
+import edu.au.life.shortenit.dto.CursorPage;
+import edu.au.life.shortenit.dto.ResolvedUrl;
+import edu.au.life.shortenit.dto.UrlClickTotals;
+import edu.au.life.shortenit.dto.UrlDimensionCount;
+import edu.au.life.shortenit.dto.UrlListing;
+import edu.au.life.shortenit.dto.UrlLastClick;
 import edu.au.life.shortenit.dto.UrlResponse;
 import edu.au.life.shortenit.dto.UrlShortenRequest;
 import edu.au.life.shortenit.dto.UrlUpdateRequest;
@@ -8,23 +14,31 @@ import edu.au.life.shortenit.dto.UrlWithAnalyticsResponse;
 import edu.au.life.shortenit.exception.CustomAliasAlreadyExistsException;
 import edu.au.life.shortenit.exception.UrlNotFoundException;
 import edu.au.life.shortenit.entity.Url;
-import edu.au.life.shortenit.entity.UrlClick;
-import edu.au.life.shortenit.entity.User;
+import edu.au.life.shortenit.entity.UrlClickRollup;
 import edu.au.life.shortenit.repository.UrlClickRepository;
+import edu.au.life.shortenit.repository.UrlClickRollupRepository;
 import edu.au.life.shortenit.repository.UrlRepository;
-import edu.au.life.shortenit.util.UserAgentParser;
+import edu.au.life.shortenit.repository.UserRepository;
+import edu.au.life.shortenit.security.CurrentUser;
+import edu.au.life.shortenit.util.BotDetector;
+import edu.au.life.shortenit.util.IpClassifier;
+import edu.au.life.shortenit.util.PageCursor;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.security.SecureRandom;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -34,27 +48,44 @@ import java.util.stream.Collectors;
 public class UrlService {
 
     private final UrlRepository urlRepository;
+    private final UserRepository userRepository;
     private final UrlClickRepository urlClickRepository;
-    private final LocalGeoIpService localGeoIpService;
-    private final UserAgentParser userAgentParser;
+    private final UrlClickRollupRepository urlClickRollupRepository;
+    private final UrlResolutionCache urlResolutionCache;
+    private final ClickIngestionService clickIngestionService;
+    private final ShortCodeAllocator shortCodeAllocator;
+    private final IpClassifier ipClassifier;
+    private final BotDetector botDetector;
 
     @Value("${app.base-url}")
     private String baseUrl;
 
-    private static final String CHARACTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
-    private static final int SHORT_CODE_LENGTH = 8;
-    private static final SecureRandom random = new SecureRandom();
+    @Value("${app.pagination.max-page-size:100}")
+    private int maxPageSize;
+
+    @Value("${app.bot-detection.mode:COUNT}")
+    private BotDetector.Mode botTrafficMode;
+
+    // A followed prefetch is served from the browser cache and never reaches us again, so it is the click
+    @Value("${app.bot-detection.prefetch-mode:TRACK}")
+    private BotDetector.Mode prefetchTrafficMode;
 
     @Transactional
-    public UrlResponse shortenUrl(UrlShortenRequest request, User user) {
+    public UrlResponse shortenUrl(UrlShortenRequest request, CurrentUser user) {
         Url url = new Url();
         url.setOriginalUrl(request.getOriginalUrl());
         url.setTitle(request.getTitle());
-        url.setUser(user);
+        // Proxy inside this transaction; the owner row is only read when the response needs it
+        url.setUser(userRepository.getReferenceById(user.id()));
 
         if (request.getCode() != null && !request.getCode().isBlank()) {
             String code = request.getCode();
 
+            // Generated codes are reserved in blocks ahead of use; an alias of that shape could take a pooled one
+            if (ShortCodeAllocator.isAutoCodeShape(code)) {
+                throw new CustomAliasAlreadyExistsException("Code is reserved for generated links: " + code);
+            }
+
             if (urlRepository.existsByCode(code)) {
                 throw new CustomAliasAlreadyExistsException("Code already exists: " + code);
             }
@@ -62,7 +93,7 @@ public class UrlService {
             url.setCode(code);
             url.setCodeType(Url.CodeType.CUSTOM);
         } else {
-            url.setCode(generateUniqueCode());
+            url.setCode(shortCodeAllocator.next());
             url.setCodeType(Url.CodeType.AUTO);
         }
 
@@ -75,46 +106,59 @@ public class UrlService {
     }
 
 
-    @Transactional
     public String getOriginalUrl(String code, HttpServletRequest request) {
-        Url url = urlRepository.findByCode(code)
+        ResolvedUrl resolved = urlResolutionCache.resolve(code)
                 .orElseThrow(() -> new UrlNotFoundException("Short URL not found: " + code));
 
-        if (!url.getIsActive()) throw new UrlNotFoundException("This URL has been deactivated");
-        if (url.getExpiresAt() != null && url.getExpiresAt().isBefore(LocalDateTime.now()))
-            throw new UrlNotFoundException("This URL has expired");
+        if (!resolved.isActive()) throw new UrlNotFoundException("This URL has been deactivated");
+        if (resolved.isExpired()) throw new UrlNotFoundException("This URL has expired");
 
-        trackClick(url, request);
-        urlRepository.incrementClickCount(url.getId());
-        return url.getOriginalUrl();
+        trackClick(resolved, request);
+        return resolved.originalUrl();
     }
 
 
-    private void trackClick(Url url, HttpServletRequest request) {
-        UrlClick click = new UrlClick();
-        click.setUrl(url);
-
-        String ipAddress = getClientIpAddress(request);
-        click.setIpAddress(ipAddress);
-
-        GeoLocation geoLocation = localGeoIpService.getLocation(ipAddress);
-        click.setCountry(geoLocation.getCountry());
-        click.setCity(geoLocation.getCity());
-
+    // Capture only; enrichment and persistence happen in ClickIngestionService workers
+    private void trackClick(ResolvedUrl url, HttpServletRequest request) {
         String userAgent = request.getHeader("User-Agent");
-        click.setUserAgent(userAgent);
-
-        click.setDeviceType(userAgentParser.getDeviceType(userAgent));
-        click.setBrowser(userAgentParser.getBrowser(userAgent));
-        click.setOperatingSystem(userAgentParser.getOperatingSystem(userAgent));
+        BotDetector.Verdict verdict = botDetector.detect(userAgent, getPurpose(request));
+        if (verdict != BotDetector.Verdict.HUMAN) {
+            BotDetector.Mode mode = verdict == BotDetector.Verdict.PREFETCH ? prefetchTrafficMode : botTrafficMode;
+            if (mode != BotDetector.Mode.SKIP) {
+                botDetector.count(verdict);
+            }
+            if (mode != BotDetector.Mode.TRACK) {
+                return;
+            }
+        }
 
-        // Get referrer
-        String referrer = request.getHeader("Referer");
-        click.setReferrer(referrer);
+        clickIngestionService.submit(new ClickEvent(
+                url.id(),
+                LocalDateTime.now(),
+                getClientIpAddress(request),
+                userAgent,
+                request.getHeader("Referer")));
+    }
 
-        urlClickRepository.save(click);
+    // Browsers mark speculative loads with one of these; unfurlers sometimes send X-Purpose: preview
+    private String getPurpose(HttpServletRequest request) {
+        String purpose = request.getHeader("Sec-Purpose");
+        if (purpose == null) {
+            purpose = request.getHeader("Purpose");
+        }
+        if (purpose == null) {
+            purpose = request.getHeader("X-Purpose");
+        }
+        if (purpose == null) {
+            purpose = request.getHeader("X-Moz");
+        }
+        return purpose;
     }
 
+    /**
+     * Prefers the first public address in the forwarding headers, so an internal hop or a
+     * garbage value is not recorded as the client. Falls back to the first valid address seen.
+     */
     private String getClientIpAddress(HttpServletRequest request) {
         String[] headers = {
                 "X-Forwarded-For",
@@ -130,62 +174,97 @@ public class UrlService {
                 "REMOTE_ADDR"
         };
 
+        String fallback = null;
         for (String header : headers) {
-            String ip = request.getHeader(header);
-            if (ip != null && !ip.isEmpty() && !"unknown".equalsIgnoreCase(ip)) {
-                return ip.split(",")[0].trim();
+            String value = request.getHeader(header);
+            if (value == null || value.isEmpty() || "unknown".equalsIgnoreCase(value)) {
+                continue;
+            }
+            for (String candidate : value.split(",")) {
+                String ip = candidate.trim();
+                if (ipClassifier.isPublic(ip)) {
+                    return ip;
+                }
+                if (fallback == null && ipClassifier.isValid(ip)) {
+                    fallback = ip;
+                }
             }
         }
 
-        return request.getRemoteAddr();
+        return fallback != null ? fallback : request.getRemoteAddr();
     }
 
-    public UrlResponse getUrlInfo(String shortCode, User user) {
+    public UrlResponse getUrlInfo(String shortCode, CurrentUser user) {
         Url url = urlRepository.findByCode(shortCode)
                 .orElseThrow(() -> new UrlNotFoundException("Short URL not found: " + shortCode));
 
-        if (!url.getUser().getId().equals(user.getId()) &&
-                !user.getRole().equals(User.Role.ADMIN)) {
+        if (!user.canAccess(url.getUser().getId())) {
             throw new UrlNotFoundException("Short URL not found: " + shortCode);
         }
 
         return convertToResponse(url);
     }
 
-    public List<UrlResponse> getAllUrls(User user) {
-        return urlRepository.findByUserOrderByCreatedAtDesc(user).stream()
-                .map(this::convertToResponse)
-                .collect(Collectors.toList());
+    /**
+     * Keyset page of the user's URLs, newest first. No total count; cost is independent of depth.
+     */
+    public CursorPage<UrlResponse> getUrlsPage(CurrentUser user, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+        // One extra row tells us whether another page exists
+        Limit fetch = Limit.of(pageSize + 1);
+        List<UrlListing> urls;
+        if (cursor == null || cursor.isBlank()) {
+            urls = urlRepository.findFirstListingPageByUserId(user.id(), fetch);
+        } else {
+            PageCursor position = PageCursor.decode(cursor);
+            urls = urlRepository.findListingPageByUserIdBefore(user.id(), position.createdAt(), position.id(), fetch);
+        }
+
+        String nextCursor = null;
+        if (urls.size() > pageSize) {
+            urls = urls.subList(0, pageSize);
+            UrlListing last = urls.get(pageSize - 1);
+            nextCursor = new PageCursor(last.createdAt(), last.id()).encode();
+        }
+        return new CursorPage<>(urls.stream().map(this::convertToResponse).collect(Collectors.toList()), nextCursor);
     }
 
-    public Page<UrlResponse> getAllUrlsPaginated(User user, Pageable pageable) {
-        Page<Url> urlPage = urlRepository.findByUser(user, pageable);
+    public Page<UrlResponse> getAllUrlsPaginated(CurrentUser user, Pageable pageable) {
+        Page<UrlListing> urlPage = urlRepository.findListingsByUserId(user.id(), capPageSize(pageable));
         return urlPage.map(this::convertToResponse);
     }
 
+    private Pageable capPageSize(Pageable pageable) {
+        if (pageable.getPageSize() <= maxPageSize) {
+            return pageable;
+        }
+        return PageRequest.of(pageable.getPageNumber(), maxPageSize, pageable.getSort());
+    }
+
     @Transactional
-    public void deleteUrl(String shortCode, User user) {
+    public void deleteUrl(String shortCode, CurrentUser user) {
         Url url = urlRepository.findByCode(shortCode)
                 .orElseThrow(() -> new UrlNotFoundException("Short URL not found: " + shortCode));
 
-        if (!url.getUser().getId().equals(user.getId()) &&
-                !user.getRole().equals(User.Role.ADMIN)) {
+        if (!user.canAccess(url.getUser().getId())) {
             throw new UrlNotFoundException("Short URL not found: " + shortCode);
         }
 
         urlRepository.delete(url);
+        urlResolutionCache.invalidate(shortCode);
     }
 
     @Transactional
-    public UrlResponse updateUrl(String code, UrlUpdateRequest request, User user) {
+    public UrlResponse updateUrl(String code, UrlUpdateRequest request, CurrentUser user) {
         Url url = urlRepository.findByCode(code)
                 .orElseThrow(() -> new UrlNotFoundException("Short URL not found: " + code));
 
-        if (!url.getUser().getId().equals(user.getId()) &&
-                !user.getRole().equals(User.Role.ADMIN)) {
+        if (!user.canAccess(url.getUser().getId())) {
             throw new UrlNotFoundException("Short URL not found: " + code);
         }
 
+        urlResolutionCache.invalidate(code);
+
         if (request.getTitle() != null) url.setTitle(request.getTitle());
 
         if (request.getIsActive() != null) {
@@ -194,11 +273,16 @@ public class UrlService {
 
         if (request.getCode() != null && !request.getCode().isBlank()) {
             String newCode = request.getCode();
+            // Same rule as shortenUrl: a rename must not take a code that may be sitting in the pool
+            if (ShortCodeAllocator.isAutoCodeShape(newCode) && !newCode.equals(url.getCode())) {
+                throw new CustomAliasAlreadyExistsException("Code is reserved for generated links: " + newCode);
+            }
             if (!newCode.equals(url.getCode()) && urlRepository.existsByCode(newCode)) {
                 throw new CustomAliasAlreadyExistsException("Code already exists: " + newCode);
             }
             url.setCode(newCode);
             url.setCodeType(Url.CodeType.CUSTOM);
+            urlResolutionCache.invalidate(newCode);
         }
 
         if (Boolean.TRUE.equals(request.getClearExpiration())) {
@@ -211,23 +295,6 @@ public class UrlService {
     }
 
 
-    private String generateUniqueCode() {
-        String code;
-        do {
-            code = generateRandomString(SHORT_CODE_LENGTH);
-        } while (urlRepository.existsByCode(code));
-        return code;
-    }
-
-
-    private String generateRandomString(int length) {
-        StringBuilder sb = new StringBuilder(length);
-        for (int i = 0; i < length; i++) {
-            sb.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
-        }
-        return sb.toString();
-    }
-
     private UrlResponse convertToResponse(Url url) {
         return UrlResponse.builder()
                 .id(url.getId())
@@ -248,35 +315,55 @@ public class UrlService {
                 .build();
     }
 
-
-    @Transactional(readOnly = true)
-    public Page<UrlWithAnalyticsResponse> getAllUrlsWithAnalytics(User user, Pageable pageable) {
-        Page<Url> urlPage = urlRepository.findByUser(user, pageable);
-
-        return urlPage.map(url -> {
-            UrlWithAnalyticsResponse.AnalyticsSummary summary = getAnalyticsSummary(url);
-
-            return UrlWithAnalyticsResponse.builder()
-                    .code(url.getCode())
-                    .originalUrl(url.getOriginalUrl())
-                    .title(url.getTitle())
-                    .clickCount(url.getClickCount())
-                    .createdAt(url.getCreatedAt())
-                    .expiresAt(url.getExpiresAt())
-                    .isExpired(url.getExpiresAt() != null && url.getExpiresAt().isBefore(LocalDateTime.now()))
-                    .isActive(url.getIsActive())
-                    .ownerName(url.getUser().getName())
-                    .ownerEmail(url.getUser().getEmail())
-                    .analyticsSummary(summary)
-                    .build();
-        });
+    private UrlResponse convertToResponse(UrlListing url) {
+        return UrlResponse.builder()
+                .id(url.id())
+                .originalUrl(url.originalUrl())
+                .code(url.code())
+                .shortUrl(baseUrl + "/s/" + url.code())
+                .title(url.title())
+                .createdAt(url.createdAt())
+                .expiresAt(url.expiresAt())
+                .clickCount(url.clickCount())
+                .isActive(url.isActive())
+                .codeType(url.codeType().name())
+                .owner(UrlResponse.UserInfo.builder()
+                        .id(url.ownerId())
+                        .name(url.ownerName())
+                        .email(url.ownerEmail())
+                        .build())
+                .build();
     }
 
-    private UrlWithAnalyticsResponse.AnalyticsSummary getAnalyticsSummary(Url url) {
-        List<UrlClick> clicks = urlClickRepository.findByUrlOrderByClickedAtDesc(url);
 
-        if (clicks.isEmpty()) {
-            return UrlWithAnalyticsResponse.AnalyticsSummary.builder()
+    public Page<UrlWithAnalyticsResponse> getAllUrlsWithAnalytics(CurrentUser user, Pageable pageable) {
+        Page<UrlListing> urlPage = urlRepository.findListingsByUserId(user.id(), capPageSize(pageable));
+        Map<Long, UrlWithAnalyticsResponse.AnalyticsSummary> summaries = getAnalyticsSummaries(
+                urlPage.getContent().stream().map(UrlListing::id).collect(Collectors.toList()));
+
+        return urlPage.map(url -> UrlWithAnalyticsResponse.builder()
+                .code(url.code())
+                .originalUrl(url.originalUrl())
+                .title(url.title())
+                .clickCount(url.clickCount())
+                .createdAt(url.createdAt())
+                .expiresAt(url.expiresAt())
+                .isExpired(url.expiresAt() != null && url.expiresAt().isBefore(LocalDateTime.now()))
+                .isActive(url.isActive())
+                .ownerName(url.ownerName())
+                .ownerEmail(url.ownerEmail())
+                .analyticsSummary(summaries.get(url.id()))
+                .build());
+    }
+
+    /**
+     * Summaries for a whole page in three grouped queries, independent of page size and click volume.
+     * Today/this-week counts come from hourly rollups, so "this week" is accurate to the hour.
+     */
+    private Map<Long, UrlWithAnalyticsResponse.AnalyticsSummary> getAnalyticsSummaries(List<Long> urlIds) {
+        Map<Long, UrlWithAnalyticsResponse.AnalyticsSummary> summaries = new HashMap<>();
+        for (Long urlId : urlIds) {
+            summaries.put(urlId, UrlWithAnalyticsResponse.AnalyticsSummary.builder()
                     .totalClicks(0L)
                     .lastClickedAt(null)
                     .topCountry(null)
@@ -285,52 +372,41 @@ public class UrlService {
                     .topDeviceClicks(0L)
                     .clicksToday(0L)
                     .clicksThisWeek(0L)
-                    .build();
+                    .build());
+        }
+        if (urlIds.isEmpty()) {
+            return summaries;
         }
 
-        LocalDateTime lastClickedAt = clicks.get(0).getClickedAt();
-
-        Map<String, Long> countryMap = clicks.stream()
-                .filter(click -> click.getCountry() != null)
-                .collect(Collectors.groupingBy(UrlClick::getCountry, Collectors.counting()));
-
-        Map.Entry<String, Long> topCountryEntry = countryMap.entrySet().stream()
-                .max(Map.Entry.comparingByValue())
-                .orElse(null);
-
-        String topCountry = topCountryEntry != null ? topCountryEntry.getKey() : null;
-        Long topCountryClicks = topCountryEntry != null ? topCountryEntry.getValue() : 0L;
-
-        Map<String, Long> deviceMap = clicks.stream()
-                .filter(click -> click.getDeviceType() != null)
-                .collect(Collectors.groupingBy(UrlClick::getDeviceType, Collectors.counting()));
+        LocalDateTime startOfToday = LocalDateTime.of(LocalDate.now(), LocalTime.MIN);
+        LocalDateTime weekStart = LocalDateTime.now().minusDays(7).truncatedTo(ChronoUnit.HOURS);
+
+        for (UrlClickTotals totals : urlClickRollupRepository.sumTotalsForUrls(
+                urlIds, startOfToday, weekStart, UrlClickRollup.Dimension.TOTAL)) {
+            UrlWithAnalyticsResponse.AnalyticsSummary summary = summaries.get(totals.getUrlId());
+            summary.setTotalClicks(totals.getTotalClicks());
+            summary.setClicksToday(totals.getClicksToday());
+            summary.setClicksThisWeek(totals.getClicksThisWeek());
+        }
 
-        Map.Entry<String, Long> topDeviceEntry = deviceMap.entrySet().stream()
-                .max(Map.Entry.comparingByValue())
-                .orElse(null);
+        for (UrlLastClick lastClick : urlClickRepository.findLastClickForUrls(urlIds)) {
+            summaries.get(lastClick.getUrlId()).setLastClickedAt(lastClick.getLastClick());
+        }
 
-        String topDeviceType = topDeviceEntry != null ? topDeviceEntry.getKey() : null;
-        Long topDeviceClicks = topDeviceEntry != null ? topDeviceEntry.getValue() : 0L;
+        for (UrlDimensionCount count : urlClickRollupRepository.sumByDimensionForUrls(
+                urlIds, EnumSet.of(UrlClickRollup.Dimension.COUNTRY, UrlClickRollup.Dimension.DEVICE))) {
+            UrlWithAnalyticsResponse.AnalyticsSummary summary = summaries.get(count.getUrlId());
+            if (count.getDimension() == UrlClickRollup.Dimension.COUNTRY) {
+                if (count.getClicks() > summary.getTopCountryClicks()) {
+                    summary.setTopCountry(count.getLabel());
+                    summary.setTopCountryClicks(count.getClicks());
+                }
+            } else if (count.getClicks() > summary.getTopDeviceClicks()) {
+                summary.setTopDeviceType(count.getLabel());
+                summary.setTopDeviceClicks(count.getClicks());
+            }
+        }
 
-        LocalDateTime startOfToday = LocalDateTime.of(LocalDate.now(), LocalTime.MIN);
-        Long clicksToday = clicks.stream()
-                .filter(click -> click.getClickedAt().isAfter(startOfToday))
-                .count();
-
-        LocalDateTime oneWeekAgo = LocalDateTime.now().minusDays(7);
-        Long clicksThisWeek = clicks.stream()
-                .filter(click -> click.getClickedAt().isAfter(oneWeekAgo))
-                .count();
-
-        return UrlWithAnalyticsResponse.AnalyticsSummary.builder()
-                .totalClicks((long) clicks.size())
-                .lastClickedAt(lastClickedAt)
-                .topCountry(topCountry)
-                .topCountryClicks(topCountryClicks)
-                .topDeviceType(topDeviceType)
-                .topDeviceClicks(topDeviceClicks)
-                .clicksToday(clicksToday)
-                .clicksThisWeek(clicksThisWeek)
-                .build();
+        return summaries;
     }
-}
\ No newline at end of file
+}
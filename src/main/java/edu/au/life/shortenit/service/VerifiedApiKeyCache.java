@@ -0,0 +1,68 @@
+package edu.au.life.shortenit.service;
+
+import edu.au.life.shortenit.dto.VerifiedApiKey;
+import edu.au.life.shortenit.util.BoundedCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.function.Predicate;
+
+/**
+ * Short-lived cache of verified API keys, keyed by the key's digest, so repeat
+ * requests skip the database lookup. Revocations evict entries on this node immediately;
+ * other nodes pick them up within the TTL.
+ */
+@Component
+public class VerifiedApiKeyCache {
+
+    private final BoundedCache<String, VerifiedApiKey> cache;
+
+    public VerifiedApiKeyCache(MeterRegistry meterRegistry,
+                               @Value("${api-key.cache.max-size:10000}") int maxSize,
+                               @Value("${api-key.cache.ttl-seconds:60}") long ttlSeconds) {
+        this.cache = new BoundedCache<>(maxSize, Duration.ofSeconds(ttlSeconds));
+        this.cache.registerMetrics(meterRegistry, "verified-api-keys");
+    }
+
+    public VerifiedApiKey get(String digest) {
+        return cache.get(digest);
+    }
+
+    public void put(String digest, VerifiedApiKey key) {
+        if (key.expiresAt() == null) {
+            cache.put(digest, key);
+        } else {
+            // Never serve a key from cache past its own expiry
+            cache.put(digest, key, Duration.between(LocalDateTime.now(), key.expiresAt()));
+        }
+    }
+
+    public void invalidateKey(Long keyId) {
+        invalidate(key -> key.keyId().equals(keyId));
+    }
+
+    public void invalidateUser(Long userId) {
+        invalidate(key -> key.userId().equals(userId));
+    }
+
+    /**
+     * Evicts now and again after commit, so a request racing the revoking transaction
+     * cannot re-cache the old state.
+     */
+    private void invalidate(Predicate<VerifiedApiKey> predicate) {
+        cache.invalidateIf(predicate);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidateIf(predicate);
+                }
+            });
+        }
+    }
+}
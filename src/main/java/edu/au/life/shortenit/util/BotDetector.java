@@ -0,0 +1,161 @@
+package edu.au.life.shortenit.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Flags crawlers, link unfurlers and prefetches so they can be kept out of click analytics.
+ * User agents are matched against every bot token at once with an Aho-Corasick automaton,
+ * compiled at startup into a dense ASCII transition table: one pass, no allocation.
+ */
+@Component
+public class BotDetector {
+
+    public enum Verdict {HUMAN, BOT, PREFETCH}
+
+    public enum Mode {
+        TRACK, // record like any other click and bump the clicks.automated counter
+        COUNT, // skip persistence, only bump the clicks.automated counter
+        SKIP   // skip persistence and counting entirely
+    }
+
+    private static final String[] DEFAULT_TOKENS = {
+            // search engines
+            "googlebot", "google-inspectiontool", "bingbot", "slurp", "duckduckbot", "baiduspider", "yandexbot",
+            "sogou", "exabot", "applebot", "petalbot", "seznambot",
+            // link previews and unfurlers
+            "facebookexternalhit", "facebot", "twitterbot", "slackbot", "slack-imgproxy", "discordbot",
+            "telegrambot", "whatsapp", "linkedinbot", "skypeuripreview", "microsoftpreview", "embedly",
+            "pinterestbot", "redditbot", "vkshare", "mastodon", "bitlybot", "iframely",
+            // SEO and archive crawlers
+            "semrushbot", "ahrefsbot", "mj12bot", "dotbot", "ia_archiver", "archive.org_bot", "bytespider",
+            "gptbot", "ccbot",
+            // scripted clients and headless browsers
+            "headlesschrome", "phantomjs", "python-requests", "python-urllib", "curl/", "wget/", "go-http-client",
+            "okhttp", "java/", "apache-httpclient", "libwww-perl", "node-fetch", "axios/",
+            // generic markers
+            "bot/", "bot;", "crawler", "spider", "scraper"
+    };
+
+    private static final int ALPHABET = 128;
+
+    // delta[state * ALPHABET + c] is the next state; output[state] is set if any token ends there
+    private final int[] delta;
+    private final boolean[] output;
+
+    private final Counter botCounter;
+    private final Counter prefetchCounter;
+
+    public BotDetector(MeterRegistry meterRegistry,
+                       @Value("${app.bot-detection.extra-tokens:}") String[] extraTokens) {
+        List<String> tokens = new ArrayList<>(Arrays.asList(DEFAULT_TOKENS));
+        for (String token : extraTokens) {
+            if (!token.isBlank()) {
+                tokens.add(token.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+
+        int maxStates = 1 + tokens.stream().mapToInt(String::length).sum();
+        int[] gotoTable = new int[maxStates * ALPHABET];
+        Arrays.fill(gotoTable, -1);
+        boolean[] terminal = new boolean[maxStates];
+        int states = 1;
+        for (String token : tokens) {
+            int state = 0;
+            for (int i = 0; i < token.length(); i++) {
+                int c = symbol(token.charAt(i));
+                if (gotoTable[state * ALPHABET + c] < 0) {
+                    gotoTable[state * ALPHABET + c] = states++;
+                }
+                state = gotoTable[state * ALPHABET + c];
+            }
+            terminal[state] = true;
+        }
+
+        // Breadth-first over the trie, filling missing transitions from each state's failure link
+        this.delta = Arrays.copyOf(gotoTable, states * ALPHABET);
+        this.output = Arrays.copyOf(terminal, states);
+        int[] fail = new int[states];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            int next = delta[c];
+            if (next < 0) {
+                delta[c] = 0;
+            } else {
+                fail[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            output[state] |= output[fail[state]];
+            for (int c = 0; c < ALPHABET; c++) {
+                int next = delta[state * ALPHABET + c];
+                if (next < 0) {
+                    delta[state * ALPHABET + c] = delta[fail[state] * ALPHABET + c];
+                } else {
+                    fail[next] = delta[fail[state] * ALPHABET + c];
+                    queue.add(next);
+                }
+            }
+        }
+
+        this.botCounter = Counter.builder("clicks.automated").tag("type", "bot").register(meterRegistry);
+        this.prefetchCounter = Counter.builder("clicks.automated").tag("type", "prefetch").register(meterRegistry);
+    }
+
+    /**
+     * Classifies a request from its User-Agent and its Sec-Purpose/Purpose-style header, either may be null.
+     * A known bot user agent wins over a prefetch header, so crawlers cannot pass as browser prefetches.
+     */
+    public Verdict detect(String userAgent, String purpose) {
+        if (userAgent != null && !userAgent.isEmpty()) {
+            int state = 0;
+            for (int i = 0; i < userAgent.length(); i++) {
+                state = delta[state * ALPHABET + symbol(userAgent.charAt(i))];
+                if (output[state]) {
+                    return Verdict.BOT;
+                }
+            }
+        }
+        return purpose != null ? classifyPurpose(purpose) : Verdict.HUMAN;
+    }
+
+    public void count(Verdict verdict) {
+        switch (verdict) {
+            case BOT -> botCounter.increment();
+            case PREFETCH -> prefetchCounter.increment();
+            default -> {
+            }
+        }
+    }
+
+    // Unfurlers send X-Purpose: preview and never follow through; browser prefetches usually become the real visit
+    private static Verdict classifyPurpose(String purpose) {
+        String value = purpose.toLowerCase(Locale.ROOT);
+        if (value.contains("preview")) {
+            return Verdict.BOT;
+        }
+        if (value.contains("prefetch") || value.contains("prerender")) {
+            return Verdict.PREFETCH;
+        }
+        return Verdict.HUMAN;
+    }
+
+    // ASCII letters folded to lowercase; anything outside ASCII shares symbol 0, which no token uses
+    private static int symbol(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c + ('a' - 'A');
+        }
+        return c < ALPHABET ? c : 0;
+    }
+}
@@ -0,0 +1,147 @@
+package edu.au.life.shortenit.util;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Small size- and TTL-bounded LRU cache with hit/miss/eviction counters.
+ * Thread-safe; intended for hot lookup paths where a full cache library is overkill.
+ */
+public class BoundedCache<K, V> {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, Entry<V>> map;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public BoundedCache(int maxSize, Duration ttl) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.map = new LinkedHashMap<>(Math.min(maxSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > BoundedCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public V get(K key) {
+        long now = System.nanoTime();
+        synchronized (map) {
+            Entry<V> entry = map.get(key);
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            if (entry.expiresAtNanos - now <= 0) {
+                map.remove(key);
+                evictions.increment();
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value;
+        }
+    }
+
+    public void put(K key, V value) {
+        put(key, value, ttlNanos);
+    }
+
+    /**
+     * Stores the value for at most the given duration, capped by the cache-wide TTL.
+     */
+    public void put(K key, V value, Duration ttl) {
+        put(key, value, Math.min(ttl.toNanos(), ttlNanos));
+    }
+
+    private void put(K key, V value, long entryTtlNanos) {
+        if (entryTtlNanos <= 0) {
+            return;
+        }
+        Entry<V> entry = new Entry<>(value, System.nanoTime() + entryTtlNanos);
+        synchronized (map) {
+            map.put(key, entry);
+        }
+    }
+
+    public void invalidate(K key) {
+        synchronized (map) {
+            map.remove(key);
+        }
+    }
+
+    public void invalidateIf(Predicate<V> predicate) {
+        synchronized (map) {
+            Iterator<Entry<V>> it = map.values().iterator();
+            while (it.hasNext()) {
+                if (predicate.test(it.next().value)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Publishes the standard cache.gets / cache.evictions / cache.size meters tagged with the cache name.
+     */
+    public void registerMetrics(MeterRegistry registry, String name) {
+        FunctionCounter.builder("cache.gets", this, BoundedCache::hitCount)
+                .tag("cache", name).tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", this, BoundedCache::missCount)
+                .tag("cache", name).tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", this, BoundedCache::evictionCount)
+                .tag("cache", name)
+                .register(registry);
+        Gauge.builder("cache.size", this, BoundedCache::size)
+                .tag("cache", name)
+                .register(registry);
+    }
+
+    private record Entry<V>(V value, long expiresAtNanos) {
+    }
+}
@@ -0,0 +1,335 @@
+package edu.au.life.shortenit.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * Classifies textual IPv4/IPv6 addresses against a configurable set of CIDR ranges
+ * (private, loopback, link-local, CGNAT, multicast, ...).
+ * Addresses are parsed straight into primitives and matched on a binary prefix trie,
+ * so a check allocates nothing and never goes through InetAddress (or DNS).
+ */
+@Component
+public class IpClassifier {
+
+    private static final String DEFAULT_RANGES = "0.0.0.0/8,10.0.0.0/8,100.64.0.0/10,127.0.0.0/8,169.254.0.0/16,"
+            + "172.16.0.0/12,192.0.0.0/24,192.168.0.0/16,198.18.0.0/15,224.0.0.0/4,240.0.0.0/4,"
+            + "::/128,::1/128,fc00::/7,fe80::/10,ff00::/8";
+
+    private static final long NOT_IPV4 = -1L;
+    private static final int INVALID = 0;
+    private static final int RESERVED = 1;
+    private static final int PUBLIC = 2;
+    // Per-thread output buffer for the two halves of a parsed IPv6 address
+    private static final ThreadLocal<long[]> SCRATCH = ThreadLocal.withInitial(() -> new long[2]);
+
+    private final PrefixTrie ipv4Ranges = new PrefixTrie();
+    private final PrefixTrie ipv6Ranges = new PrefixTrie();
+
+    public IpClassifier(@Value("${app.ip.reserved-ranges:" + DEFAULT_RANGES + "}") String[] reservedRanges) {
+        for (String range : reservedRanges) {
+            addRange(range.trim());
+        }
+    }
+
+    /**
+     * True for a well-formed address outside every reserved range, i.e. one worth a geo lookup.
+     */
+    public boolean isPublic(String ip) {
+        return classify(ip) == PUBLIC;
+    }
+
+    /**
+     * True if the address parses and falls in a reserved range. Malformed input is not reserved.
+     */
+    public boolean isReserved(String ip) {
+        return classify(ip) == RESERVED;
+    }
+
+    public boolean isValid(String ip) {
+        return classify(ip) != INVALID;
+    }
+
+    private int classify(String ip) {
+        if (ip == null || ip.isEmpty()) {
+            return INVALID;
+        }
+        if (ip.indexOf(':') < 0) {
+            long v4 = parseIpv4(ip, 0, ip.length());
+            if (v4 == NOT_IPV4) {
+                return INVALID;
+            }
+            return ipv4Ranges.matches(v4 << 32, 0L) ? RESERVED : PUBLIC;
+        }
+
+        long[] halves = SCRATCH.get();
+        if (!parseIpv6(ip, ipv6End(ip), halves)) {
+            return INVALID;
+        }
+        // IPv4-mapped (::ffff:a.b.c.d) addresses are classified by their IPv4 part
+        boolean reserved = halves[0] == 0 && (halves[1] >>> 32) == 0xFFFFL
+                ? ipv4Ranges.matches(halves[1] << 32, 0L)
+                : ipv6Ranges.matches(halves[0], halves[1]);
+        return reserved ? RESERVED : PUBLIC;
+    }
+
+    private void addRange(String cidr) {
+        int slash = cidr.indexOf('/');
+        String address = slash < 0 ? cidr : cidr.substring(0, slash);
+        if (address.indexOf(':') < 0) {
+            long v4 = parseIpv4(address, 0, address.length());
+            int bits = slash < 0 ? 32 : prefixLength(cidr, slash, 32);
+            if (v4 == NOT_IPV4) {
+                throw new IllegalArgumentException("Invalid CIDR range: " + cidr);
+            }
+            ipv4Ranges.add(v4 << 32, 0L, bits);
+        } else {
+            long[] halves = new long[2];
+            if (!parseIpv6(address, address.length(), halves)) {
+                throw new IllegalArgumentException("Invalid CIDR range: " + cidr);
+            }
+            int bits = slash < 0 ? 128 : prefixLength(cidr, slash, 128);
+            ipv6Ranges.add(halves[0], halves[1], bits);
+        }
+    }
+
+    private static int prefixLength(String cidr, int slash, int max) {
+        int bits;
+        try {
+            bits = Integer.parseInt(cidr.substring(slash + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid CIDR range: " + cidr);
+        }
+        if (bits < 0 || bits > max) {
+            throw new IllegalArgumentException("Invalid CIDR range: " + cidr);
+        }
+        return bits;
+    }
+
+    /**
+     * Parses dotted-quad text in [from, to) into the low 32 bits of a long, or NOT_IPV4.
+     */
+    private static long parseIpv4(String s, int from, int to) {
+        long result = 0;
+        int octets = 0;
+        int value = -1;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                // no leading zeros: 010 is octal to some parsers and ambiguous here
+                if (value == 0) {
+                    return NOT_IPV4;
+                }
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) {
+                    return NOT_IPV4;
+                }
+            } else if (c == '.' && value >= 0 && octets < 3) {
+                result = (result << 8) | value;
+                octets++;
+                value = -1;
+            } else {
+                return NOT_IPV4;
+            }
+        }
+        if (value < 0 || octets != 3) {
+            return NOT_IPV4;
+        }
+        return (result << 8) | value;
+    }
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    // Drops a zone id such as %eth0
+    private static int ipv6End(String s) {
+        int percent = s.indexOf('%');
+        return percent < 0 ? s.length() : percent;
+    }
+
+    /**
+     * Parses IPv6 text in [0, end) into halves[0] (high 64 bits) and halves[1] (low 64 bits).
+     * Returns false for malformed input.
+     * Groups before "::" are accumulated as the head, groups after it as the tail, and the head is
+     * shifted past the zeros the "::" stands for. A trailing dotted quad counts as two groups.
+     */
+    private static boolean parseIpv6(String s, int end, long[] halves) {
+        long headHigh = 0, headLow = 0, tailHigh = 0, tailLow = 0;
+        int headGroups = 0, tailGroups = 0;
+        boolean compressed = false;
+
+        int i = 0;
+        if (end >= 2 && s.charAt(0) == ':' && s.charAt(1) == ':') {
+            compressed = true;
+            i = 2;
+        } else if (end > 0 && s.charAt(0) == ':') {
+            return false;
+        }
+
+        while (i < end) {
+            int groupEnd = i;
+            int group = 0;
+            boolean dotted = false;
+            while (groupEnd < end && s.charAt(groupEnd) != ':') {
+                char c = s.charAt(groupEnd);
+                int digit = hexDigit(c);
+                if (c == '.') {
+                    dotted = true;
+                } else if (digit < 0) {
+                    return false;
+                }
+                group = (group << 4) | Math.max(digit, 0);
+                groupEnd++;
+            }
+
+            int groupCount;
+            long bits;
+            if (dotted) {
+                if (groupEnd != end) {
+                    return false;
+                }
+                long v4 = parseIpv4(s, i, groupEnd);
+                if (v4 == NOT_IPV4) {
+                    return false;
+                }
+                groupCount = 2;
+                bits = v4;
+            } else {
+                if (groupEnd == i || groupEnd - i > 4) {
+                    return false;
+                }
+                groupCount = 1;
+                bits = group;
+            }
+
+            int shift = 16 * groupCount;
+            if (compressed) {
+                tailHigh = (tailHigh << shift) | (tailLow >>> (64 - shift));
+                tailLow = (tailLow << shift) | bits;
+                tailGroups += groupCount;
+            } else {
+                headHigh = (headHigh << shift) | (headLow >>> (64 - shift));
+                headLow = (headLow << shift) | bits;
+                headGroups += groupCount;
+            }
+            if (headGroups + tailGroups > 8) {
+                return false;
+            }
+
+            i = groupEnd;
+            if (i < end) {
+                // at a ':'
+                if (i + 1 < end && s.charAt(i + 1) == ':') {
+                    if (compressed) {
+                        return false;
+                    }
+                    compressed = true;
+                    i += 2;
+                } else if (i + 1 == end) {
+                    return false;
+                } else {
+                    i++;
+                }
+            }
+        }
+
+        if (compressed ? headGroups + tailGroups > 7 : headGroups != 8) {
+            return false;
+        }
+
+        // head << (16 * (8 - headGroups)) | tail, in two 64-bit halves
+        int shift = 16 * (8 - headGroups);
+        long shiftedHigh;
+        long shiftedLow;
+        if (shift == 0) {
+            shiftedHigh = headHigh;
+            shiftedLow = headLow;
+        } else if (shift == 128) {
+            shiftedHigh = 0;
+            shiftedLow = 0;
+        } else if (shift >= 64) {
+            shiftedHigh = headLow << (shift - 64);
+            shiftedLow = 0;
+        } else {
+            shiftedHigh = (headHigh << shift) | (headLow >>> (64 - shift));
+            shiftedLow = headLow << shift;
+        }
+        halves[0] = shiftedHigh | tailHigh;
+        halves[1] = shiftedLow | tailLow;
+        return true;
+    }
+
+    /**
+     * Binary trie over address bits, stored in flat int arrays. A node marked terminal ends a
+     * range, so a lookup stops at the first (shortest) matching prefix.
+     */
+    private static final class PrefixTrie {
+        private int[] zero = new int[64];
+        private int[] one = new int[64];
+        private boolean[] terminal = new boolean[64];
+        private int size = 1;
+
+        void add(long high, long low, int bits) {
+            int node = 0;
+            for (int depth = 0; depth < bits; depth++) {
+                if (terminal[node]) {
+                    return;
+                }
+                boolean set = bit(high, low, depth);
+                int child = set ? one[node] : zero[node];
+                if (child == 0) {
+                    // newNode may grow the arrays, so store through the fields afterwards
+                    child = newNode();
+                    if (set) {
+                        one[node] = child;
+                    } else {
+                        zero[node] = child;
+                    }
+                }
+                node = child;
+            }
+            terminal[node] = true;
+        }
+
+        boolean matches(long high, long low) {
+            int node = 0;
+            for (int depth = 0; depth < 128; depth++) {
+                if (terminal[node]) {
+                    return true;
+                }
+                node = bit(high, low, depth) ? one[node] : zero[node];
+                if (node == 0) {
+                    return false;
+                }
+            }
+            return terminal[node];
+        }
+
+        private int newNode() {
+            if (size == terminal.length) {
+                zero = Arrays.copyOf(zero, size * 2);
+                one = Arrays.copyOf(one, size * 2);
+                terminal = Arrays.copyOf(terminal, size * 2);
+            }
+            return size++;
+        }
+
+        private static boolean bit(long high, long low, int depth) {
+            return depth < 64
+                    ? (high >>> (63 - depth) & 1L) != 0
+                    : (low >>> (127 - depth) & 1L) != 0;
+        }
+    }
+}
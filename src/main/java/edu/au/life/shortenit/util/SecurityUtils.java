@@ -4,6 +4,7 @@ import edu.au.life.shortenit.entity.User;
 import edu.au.life.shortenit.exception.ResourceNotFoundException;
 import edu.au.life.shortenit.exception.UnauthorizedException;
 import edu.au.life.shortenit.repository.UserRepository;
+import edu.au.life.shortenit.security.CurrentUser;
 import edu.au.life.shortenit.security.JwtAuthenticationFilter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
@@ -20,35 +21,52 @@ public class SecurityUtils {
         SecurityUtils.userRepository = repo;
     }
 
-    public static User getCurrentUser() {
+    /**
+     * The caller as carried by the token; no database access.
+     */
+    public static CurrentUser getCurrentPrincipal() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
 
         if (authentication == null || !authentication.isAuthenticated()) {
             throw new UnauthorizedException("Not authenticated");
         }
 
-        Object details = authentication.getDetails();
-
-        if (details instanceof JwtAuthenticationFilter.UserPrincipal) {
-            JwtAuthenticationFilter.UserPrincipal principal =
-                    (JwtAuthenticationFilter.UserPrincipal) details;
-
-            if (userRepository == null) {
-                throw new IllegalStateException("SecurityUtils not properly initialized");
-            }
-
-            return userRepository.findById(principal.getUserId())
-                    .orElseThrow(() -> new ResourceNotFoundException("User not found"));
+        if (authentication.getDetails() instanceof JwtAuthenticationFilter.UserPrincipal principal) {
+            return new CurrentUser(principal.getUserId(), principal.getEmail(), principal.getRole());
         }
 
         throw new UnauthorizedException("Invalid authentication");
     }
 
+    /**
+     * Loads the full user entity. Use only where the user itself is read beyond the token
+     * claims or mutated; ownership and role checks should use {@link #getCurrentPrincipal()}.
+     */
+    public static User getCurrentUser() {
+        CurrentUser principal = getCurrentPrincipal();
+        return getUserRepository().findById(principal.id())
+                .orElseThrow(() -> new ResourceNotFoundException("User not found"));
+    }
+
+    /**
+     * An uninitialised proxy for the caller, for setting foreign keys without a select.
+     */
+    public static User getCurrentUserReference() {
+        return getUserRepository().getReferenceById(getCurrentPrincipal().id());
+    }
+
     public static Long getCurrentUserId() {
-        return getCurrentUser().getId();
+        return getCurrentPrincipal().id();
     }
 
     public static String getCurrentUserEmail() {
-        return getCurrentUser().getEmail();
+        return getCurrentPrincipal().email();
+    }
+
+    private static UserRepository getUserRepository() {
+        if (userRepository == null) {
+            throw new IllegalStateException("SecurityUtils not properly initialized");
+        }
+        return userRepository;
     }
 }
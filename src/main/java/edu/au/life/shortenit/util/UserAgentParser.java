@@ -1,87 +1,220 @@
 package edu.au.life.shortenit.util;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Classifies user agents into device type, browser and operating system.
+ * All keywords are found in one case-insensitive pass over the raw string, and results are
+ * cached by user agent since real traffic only carries a few thousand distinct values.
+ */
 @Component
 public class UserAgentParser {
 
-    // device type
-    public String getDeviceType(String userAgent) {
+    public record Classification(String deviceType, String browser, String operatingSystem) {
+    }
+
+    private static final Classification UNKNOWN = new Classification("unknown", "unknown", "unknown");
+
+    // Keywords, all lowercase ASCII; a match sets the bit at the same index
+    private static final String[] KEYWORDS = {
+            "ipad", "tablet", "android", "mobile", "iphone", "ipod", "blackberry", "windows phone",
+            "edg/", "edg", "chrome/", "chrome", "firefox/", "safari/", "opera", "opr/", "msie", "trident/",
+            "windows nt 10", "windows nt 6.3", "windows nt 6.2", "windows nt 6.1", "windows", "mac os x", "linux"
+    };
+    private static final long IPAD = bit("ipad");
+    private static final long TABLET = bit("tablet");
+    private static final long ANDROID = bit("android");
+    private static final long MOBILE = bit("mobile");
+    private static final long IPHONE = bit("iphone");
+    private static final long IPOD = bit("ipod");
+    private static final long BLACKBERRY = bit("blackberry");
+    private static final long WINDOWS_PHONE = bit("windows phone");
+    private static final long EDG_SLASH = bit("edg/");
+    private static final long EDG = bit("edg");
+    private static final long CHROME_SLASH = bit("chrome/");
+    private static final long CHROME = bit("chrome");
+    private static final long FIREFOX = bit("firefox/");
+    private static final long SAFARI = bit("safari/");
+    private static final long OPERA = bit("opera");
+    private static final long OPR = bit("opr/");
+    private static final long MSIE = bit("msie");
+    private static final long TRIDENT = bit("trident/");
+    private static final long WINDOWS_10 = bit("windows nt 10");
+    private static final long WINDOWS_8_1 = bit("windows nt 6.3");
+    private static final long WINDOWS_8 = bit("windows nt 6.2");
+    private static final long WINDOWS_7 = bit("windows nt 6.1");
+    private static final long WINDOWS = bit("windows");
+    private static final long MAC_OS_X = bit("mac os x");
+    private static final long LINUX = bit("linux");
+
+    // Keyword indexes grouped by first letter, so each position only tries the keywords that can start there
+    private static final int[][] KEYWORDS_BY_FIRST_CHAR = new int[26][];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            int count = 0;
+            int[] indexes = new int[KEYWORDS.length];
+            for (int i = 0; i < KEYWORDS.length; i++) {
+                if (KEYWORDS[i].charAt(0) == c) {
+                    indexes[count++] = i;
+                }
+            }
+            KEYWORDS_BY_FIRST_CHAR[c - 'a'] = Arrays.copyOf(indexes, count);
+        }
+    }
+
+    private final BoundedCache<String, Classification> cache;
+
+    public UserAgentParser(MeterRegistry meterRegistry,
+                           @Value("${app.user-agent.cache.max-size:10000}") int cacheMaxSize,
+                           @Value("${app.user-agent.cache.ttl-seconds:86400}") long cacheTtlSeconds) {
+        this.cache = new BoundedCache<>(cacheMaxSize, Duration.ofSeconds(cacheTtlSeconds));
+        this.cache.registerMetrics(meterRegistry, "user-agents");
+    }
+
+    /**
+     * Device type, browser and operating system in one call; prefer this over the single getters.
+     */
+    public Classification classify(String userAgent) {
         if (userAgent == null || userAgent.isEmpty()) {
-            return "unknown";
+            return UNKNOWN;
+        }
+        Classification cached = cache.get(userAgent);
+        if (cached != null) {
+            return cached;
         }
 
-        String ua = userAgent.toLowerCase();
+        long found = scan(userAgent);
+        Classification classification = new Classification(
+                deviceType(found), browser(found), operatingSystem(found));
+        cache.put(userAgent, classification);
+        return classification;
+    }
+
+    // device type
+    public String getDeviceType(String userAgent) {
+        return classify(userAgent).deviceType();
+    }
+
+    // browser type
+    public String getBrowser(String userAgent) {
+        return classify(userAgent).browser();
+    }
+
+    public String getOperatingSystem(String userAgent) {
+        return classify(userAgent).operatingSystem();
+    }
 
+    private static String deviceType(long found) {
         // Check for tablets first (more specific)
-        if (ua.contains("ipad") || ua.contains("tablet") ||
-            (ua.contains("android") && !ua.contains("mobile"))) {
+        if (has(found, IPAD) || has(found, TABLET) || (has(found, ANDROID) && !has(found, MOBILE))) {
             return "tablet";
         }
 
         // Check for mobile devices
-        if (ua.contains("mobile") || ua.contains("iphone") || ua.contains("ipod")
-            || ua.contains("blackberry") || ua.contains("windows phone")
-            || (ua.contains("android") && ua.contains("mobile"))) {
+        if (has(found, MOBILE) || has(found, IPHONE) || has(found, IPOD)
+                || has(found, BLACKBERRY) || has(found, WINDOWS_PHONE)) {
             return "mobile";
         }
 
         return "desktop";
     }
 
-    // browser type
-    public String getBrowser(String userAgent) {
-        if (userAgent == null || userAgent.isEmpty()) {
-            return "unknown";
-        }
-
-        String ua = userAgent.toLowerCase();
-
+    private static String browser(long found) {
         // Check in order of specificity
-        if (ua.contains("edg/")) {
+        if (has(found, EDG_SLASH)) {
             return "Edge";
-        } else if (ua.contains("chrome/") && !ua.contains("edg")) {
+        } else if (has(found, CHROME_SLASH) && !has(found, EDG)) {
             return "Chrome";
-        } else if (ua.contains("firefox/")) {
+        } else if (has(found, FIREFOX)) {
             return "Firefox";
-        } else if (ua.contains("safari/") && !ua.contains("chrome")) {
+        } else if (has(found, SAFARI) && !has(found, CHROME)) {
             return "Safari";
-        } else if (ua.contains("opera") || ua.contains("opr/")) {
+        } else if (has(found, OPERA) || has(found, OPR)) {
             return "Opera";
-        } else if (ua.contains("msie") || ua.contains("trident/")) {
+        } else if (has(found, MSIE) || has(found, TRIDENT)) {
             return "Internet Explorer";
         }
 
         return "Other";
     }
 
-    public String getOperatingSystem(String userAgent) {
-        if (userAgent == null || userAgent.isEmpty()) {
-            return "unknown";
-        }
-
-        String ua = userAgent.toLowerCase();
-
-        if (ua.contains("windows nt 10")) {
+    private static String operatingSystem(long found) {
+        if (has(found, WINDOWS_10)) {
             return "Windows 10";
-        } else if (ua.contains("windows nt 6.3")) {
+        } else if (has(found, WINDOWS_8_1)) {
             return "Windows 8.1";
-        } else if (ua.contains("windows nt 6.2")) {
+        } else if (has(found, WINDOWS_8)) {
             return "Windows 8";
-        } else if (ua.contains("windows nt 6.1")) {
+        } else if (has(found, WINDOWS_7)) {
             return "Windows 7";
-        } else if (ua.contains("windows")) {
+        } else if (has(found, WINDOWS)) {
             return "Windows";
-        } else if (ua.contains("mac os x")) {
+        } else if (has(found, MAC_OS_X)) {
             return "macOS";
-        } else if (ua.contains("linux")) {
+        } else if (has(found, LINUX)) {
             return "Linux";
-        } else if (ua.contains("android")) {
+        } else if (has(found, ANDROID)) {
             return "Android";
-        } else if (ua.contains("iphone") || ua.contains("ipad")) {
+        } else if (has(found, IPHONE) || has(found, IPAD)) {
             return "iOS";
         }
 
         return "Other";
     }
+
+    /**
+     * One pass over the string; returns a bit set of the keywords that occur anywhere in it.
+     * Case folding is ASCII-only and done per character, so no lowercase copy is made.
+     */
+    private static long scan(String ua) {
+        long found = 0;
+        int length = ua.length();
+        for (int i = 0; i < length; i++) {
+            char c = lower(ua.charAt(i));
+            if (c < 'a' || c > 'z') {
+                continue;
+            }
+            for (int keyword : KEYWORDS_BY_FIRST_CHAR[c - 'a']) {
+                if ((found & (1L << keyword)) == 0 && matchesAt(ua, i, KEYWORDS[keyword])) {
+                    found |= 1L << keyword;
+                }
+            }
+        }
+        return found;
+    }
+
+    private static boolean matchesAt(String ua, int offset, String keyword) {
+        if (offset + keyword.length() > ua.length()) {
+            return false;
+        }
+        for (int j = 1; j < keyword.length(); j++) {
+            if (lower(ua.charAt(offset + j)) != keyword.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char lower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static boolean has(long found, long keyword) {
+        return (found & keyword) != 0;
+    }
+
+    private static long bit(String keyword) {
+        for (int i = 0; i < KEYWORDS.length; i++) {
+            if (KEYWORDS[i].equals(keyword)) {
+                return 1L << i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown keyword: " + keyword);
+    }
 }
@@ -0,0 +1,155 @@
+package edu.au.life.shortenit.service;
+
+import edu.au.life.shortenit.dto.ApiKeyRequest;
+import edu.au.life.shortenit.dto.VerifiedApiKey;
+import edu.au.life.shortenit.entity.ApiKey;
+import edu.au.life.shortenit.entity.User;
+import edu.au.life.shortenit.repository.ApiKeyRepository;
+import edu.au.life.shortenit.util.ApiKeyGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Uncached API-key authentication against 100 to 100k stored keys in an in-memory H2 database.
+ * The repository's lookup-id query (join on users, unique index on lookup_id) is run over JDBC
+ * with the same shape as the JPQL one; JPA overhead and network latency to Postgres are not
+ * included. The cost per call should stay flat as keyCount grows, for known and unknown keys.
+ *
+ * Run with: ./mvnw test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=ApiKeyAuthenticationBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApiKeyAuthenticationBenchmark {
+
+    private static final String PREFIX = "sk_live_";
+    private static final int SECRET_LENGTH = 32;
+    private static final String FIND_BY_LOOKUP_ID = "SELECT k.id, k.key_hash, k.name, k.expires_at, " +
+            "u.id AS user_id, u.email, u.name AS user_name, u.role " +
+            "FROM api_keys k JOIN users u ON u.id = k.user_id WHERE k.lookup_id = ?";
+
+    @Param({"100", "10000", "100000"})
+    private int keyCount;
+
+    private SingleConnectionDataSource dataSource;
+    private ApiKeyService apiKeyService;
+    private String[] presentedKeys;
+    private String[] unknownKeys;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:mem:api_keys_" + keyCount + ";MODE=PostgreSQL", "sa", "", true);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT PRIMARY KEY, email VARCHAR(255) NOT NULL, " +
+                "name VARCHAR(255), role VARCHAR(20) NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE api_keys (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+                "user_id BIGINT NOT NULL REFERENCES users (id), key_hash VARCHAR(255) NOT NULL UNIQUE, " +
+                "lookup_id VARCHAR(32) UNIQUE, name VARCHAR(100) NOT NULL, expires_at TIMESTAMP)");
+        jdbcTemplate.update("INSERT INTO users (id, email, name, role) VALUES (1, 'owner@example.com', 'Owner', 'USER')");
+
+        ApiKeyRepository repository = mock(ApiKeyRepository.class);
+        when(repository.save(any(ApiKey.class))).thenAnswer(invocation -> {
+            ApiKey key = invocation.getArgument(0);
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(
+                        "INSERT INTO api_keys (user_id, key_hash, lookup_id, name) VALUES (?, ?, ?, ?)",
+                        Statement.RETURN_GENERATED_KEYS);
+                statement.setLong(1, key.getUser().getId());
+                statement.setString(2, key.getKeyHash());
+                statement.setString(3, key.getLookupId());
+                statement.setString(4, key.getName());
+                return statement;
+            }, keyHolder);
+            key.setId(keyHolder.getKey().longValue());
+            return key;
+        });
+        when(repository.findByLookupIdWithUser(anyString())).thenAnswer(invocation -> {
+            List<ApiKey> keys = jdbcTemplate.query(FIND_BY_LOOKUP_ID, (rs, rowNum) -> ApiKey.builder()
+                    .id(rs.getLong("id"))
+                    .keyHash(rs.getString("key_hash"))
+                    .name(rs.getString("name"))
+                    .expiresAt(rs.getTimestamp("expires_at") != null
+                            ? rs.getTimestamp("expires_at").toLocalDateTime() : null)
+                    .user(User.builder()
+                            .id(rs.getLong("user_id"))
+                            .email(rs.getString("email"))
+                            .name(rs.getString("user_name"))
+                            .role(User.Role.valueOf(rs.getString("role")))
+                            .build())
+                    .build(), invocation.<String>getArgument(0));
+            return keys.stream().findFirst();
+        });
+
+        apiKeyService = new ApiKeyService();
+        ReflectionTestUtils.setField(apiKeyService, "apiKeyRepository", repository);
+        ReflectionTestUtils.setField(apiKeyService, "apiKeyGenerator", new ApiKeyGenerator());
+        // A cache that always misses, so every call is a real lookup and HMAC
+        ReflectionTestUtils.setField(apiKeyService, "verifiedApiKeyCache", mock(VerifiedApiKeyCache.class));
+        ReflectionTestUtils.setField(apiKeyService, "apiKeyUsageTracker", mock(ApiKeyUsageTracker.class));
+        ReflectionTestUtils.setField(apiKeyService, "apiKeyPrefix", PREFIX);
+        ReflectionTestUtils.setField(apiKeyService, "apiKeyLength", SECRET_LENGTH);
+        ReflectionTestUtils.setField(apiKeyService, "hashSecret", "benchmark-hash-secret-0123456789abcdef");
+        apiKeyService.init();
+
+        User owner = User.builder().id(1L).email("owner@example.com").name("Owner").build();
+        presentedKeys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            presentedKeys[i] = apiKeyService.createApiKey(owner, new ApiKeyRequest("key-" + i, null)).getApiKey();
+        }
+
+        ApiKeyGenerator generator = new ApiKeyGenerator();
+        unknownKeys = new String[1024];
+        for (int i = 0; i < unknownKeys.length; i++) {
+            unknownKeys[i] = generator.generateApiKey(PREFIX, 12 + SECRET_LENGTH);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        new JdbcTemplate(dataSource).execute("DROP ALL OBJECTS");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public Optional<VerifiedApiKey> knownKey() {
+        return apiKeyService.authenticate(presentedKeys[next++ % presentedKeys.length]);
+    }
+
+    @Benchmark
+    public Optional<VerifiedApiKey> unknownKey() {
+        return apiKeyService.authenticate(unknownKeys[next++ % unknownKeys.length]);
+    }
+}
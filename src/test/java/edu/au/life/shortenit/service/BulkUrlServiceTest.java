@@ -0,0 +1,130 @@
+package edu.au.life.shortenit.service;
+
+import edu.au.life.shortenit.dto.BulkShortenResponse;
+import edu.au.life.shortenit.dto.UrlShortenRequest;
+import edu.au.life.shortenit.entity.User;
+import edu.au.life.shortenit.repository.UrlRepository;
+import edu.au.life.shortenit.repository.UserRepository;
+import edu.au.life.shortenit.security.CurrentUser;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BulkUrlServiceTest {
+
+    private static final CurrentUser CALLER = new CurrentUser(1L, "owner@example.com", "USER");
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final AtomicInteger statements = new AtomicInteger();
+    private ValidatorFactory validatorFactory;
+    private BulkUrlService bulkUrlService;
+
+    @BeforeEach
+    void setUp() {
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findById(anyLong())).thenReturn(Optional.of(
+                User.builder().id(1L).email("owner@example.com").name("Owner").build()));
+
+        AtomicInteger nextCode = new AtomicInteger();
+        ShortCodeAllocator allocator = mock(ShortCodeAllocator.class);
+        when(allocator.next(anyInt())).thenAnswer(invocation -> {
+            List<String> codes = new ArrayList<>();
+            for (int i = 0; i < invocation.<Integer>getArgument(0); i++) {
+                codes.add(String.format("auto_%04d", nextCode.incrementAndGet()));
+            }
+            return codes;
+        });
+
+        // Stands in for Postgres: a statement holding a URL the database rejects fails as a whole
+        AtomicLong nextId = new AtomicLong();
+        doAnswer(invocation -> {
+            statements.incrementAndGet();
+            RowCallbackHandler handler = invocation.getArgument(1);
+            Object[] args = (Object[]) invocation.getRawArguments()[2];
+            for (int row = 0; row < args.length; row += 7) {
+                if (((String) args[row + 1]).contains("rejected")) {
+                    throw new DataIntegrityViolationException("value too long");
+                }
+            }
+            for (int row = 0; row < args.length; row += 7) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getString("code")).thenReturn((String) args[row + 2]);
+                when(rs.getLong("id")).thenReturn(nextId.incrementAndGet());
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        bulkUrlService = new BulkUrlService(mock(UrlRepository.class), userRepository, allocator,
+                jdbcTemplate, validatorFactory.getValidator());
+        ReflectionTestUtils.setField(bulkUrlService, "baseUrl", "https://sho.rt");
+    }
+
+    @AfterEach
+    void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Test
+    void insertsAChunkInOneStatement() {
+        List<BulkShortenResponse.Item> results = bulkUrlService.shortenUrls(
+                List.of(request("https://a.example"), request("https://b.example"), request("https://c.example")),
+                0, CALLER);
+
+        assertThat(results).allSatisfy(item -> assertThat(item.getUrl()).isNotNull());
+        assertThat(statements).hasValue(1);
+    }
+
+    @Test
+    void failedChunkFallsBackToRowByRowInserts() {
+        List<BulkShortenResponse.Item> results = bulkUrlService.shortenUrls(
+                List.of(request("https://a.example"), request("https://rejected.example"), request("https://c.example")),
+                10, CALLER);
+
+        assertThat(results).extracting(BulkShortenResponse.Item::getIndex).containsExactly(10, 11, 12);
+        assertThat(results.get(0).getUrl()).isNotNull();
+        assertThat(results.get(1).getUrl()).isNull();
+        assertThat(results.get(1).getError()).isEqualTo("Could not be saved");
+        assertThat(results.get(2).getUrl()).isNotNull();
+        assertThat(statements).hasValue(4);
+    }
+
+    @Test
+    void overlongUrlIsRejectedByValidationBeforeAnyInsert() {
+        String overlong = "https://example.com/" + "a".repeat(2048);
+
+        List<BulkShortenResponse.Item> results = bulkUrlService.shortenUrls(
+                List.of(request(overlong), request("https://b.example")), 0, CALLER);
+
+        assertThat(results.get(0).getError()).contains("originalUrl").contains("2048");
+        assertThat(results.get(1).getUrl()).isNotNull();
+        assertThat(statements).hasValue(1);
+    }
+
+    private static UrlShortenRequest request(String url) {
+        return new UrlShortenRequest(url, "Title", null, null);
+    }
+}
@@ -0,0 +1,31 @@
+package edu.au.life.shortenit.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClickExportServiceTest {
+
+    @Test
+    void plainValuesAreWrittenAsIs() {
+        assertThat(ClickExportService.csvEscape("Mozilla/5.0 (X11; Linux x86_64)")).isEqualTo("Mozilla/5.0 (X11; Linux x86_64)");
+        assertThat(ClickExportService.csvEscape("")).isEmpty();
+    }
+
+    @Test
+    void separatorsQuotesAndLineBreaksAreQuoted() {
+        assertThat(ClickExportService.csvEscape("a,b")).isEqualTo("\"a,b\"");
+        assertThat(ClickExportService.csvEscape("say \"hi\"")).isEqualTo("\"say \"\"hi\"\"\"");
+        assertThat(ClickExportService.csvEscape("line\nbreak")).isEqualTo("\"line\nbreak\"");
+    }
+
+    @Test
+    void formulaPrefixesAreNeutralised() {
+        assertThat(ClickExportService.csvEscape("=HYPERLINK(\"http://evil\")")).isEqualTo("\"'=HYPERLINK(\"\"http://evil\"\")\"");
+        assertThat(ClickExportService.csvEscape("+1")).isEqualTo("\"'+1\"");
+        assertThat(ClickExportService.csvEscape("-2+3")).isEqualTo("\"'-2+3\"");
+        assertThat(ClickExportService.csvEscape("@SUM(A1)")).isEqualTo("\"'@SUM(A1)\"");
+        assertThat(ClickExportService.csvEscape("\tcmd")).isEqualTo("\"'\tcmd\"");
+        assertThat(ClickExportService.csvEscape("\r=1")).isEqualTo("\"'\r=1\"");
+    }
+}
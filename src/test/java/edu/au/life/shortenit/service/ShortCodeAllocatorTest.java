@@ -0,0 +1,87 @@
+package edu.au.life.shortenit.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShortCodeAllocatorTest {
+
+    private static final long CODE_SPACE = 218_340_105_584_896L; // 62^8
+    private static final String KEY = "test-scramble-key-0123456789abcdef";
+
+    private static ShortCodeAllocator allocator(String scrambleKey) {
+        return new ShortCodeAllocator(null, new SimpleMeterRegistry(), 1000, 200, scrambleKey);
+    }
+
+    @Test
+    void scrambleIsInjectiveOverConsecutiveSequenceValues() {
+        ShortCodeAllocator allocator = allocator(KEY);
+        Set<Long> seen = new HashSet<>();
+        for (long value = 0; value < 200_000; value++) {
+            long scrambled = allocator.scramble(value);
+            assertThat(scrambled).isBetween(0L, CODE_SPACE - 1);
+            assertThat(seen.add(scrambled)).as("collision at %d", value).isTrue();
+        }
+    }
+
+    @Test
+    void scrambleStaysInsideTheCodeSpaceAtItsUpperEnd() {
+        ShortCodeAllocator allocator = allocator(KEY);
+        Set<Long> seen = new HashSet<>();
+        for (long value = CODE_SPACE - 50_000; value < CODE_SPACE; value++) {
+            long scrambled = allocator.scramble(value);
+            assertThat(scrambled).isBetween(0L, CODE_SPACE - 1);
+            assertThat(seen.add(scrambled)).as("collision at %d", value).isTrue();
+        }
+    }
+
+    @Test
+    void scrambledValuesEncodeToGeneratedCodeShape() {
+        ShortCodeAllocator allocator = allocator(KEY);
+        for (long value = 0; value < 1_000; value++) {
+            assertThat(ShortCodeAllocator.isAutoCodeShape(ShortCodeAllocator.encode(allocator.scramble(value)))).isTrue();
+        }
+        assertThat(ShortCodeAllocator.encode(0)).isEqualTo("aaaa_aaaa");
+        assertThat(ShortCodeAllocator.encode(CODE_SPACE - 1)).isEqualTo("9999_9999");
+    }
+
+    @Test
+    void scrambleIsDeterministicPerKeyAndDiffersAcrossKeys() {
+        ShortCodeAllocator first = allocator(KEY);
+        ShortCodeAllocator same = allocator(KEY);
+        ShortCodeAllocator other = allocator("another-scramble-key-0123456789abcdef");
+
+        int differing = 0;
+        for (long value = 0; value < 100; value++) {
+            assertThat(same.scramble(value)).isEqualTo(first.scramble(value));
+            if (other.scramble(value) != first.scramble(value)) {
+                differing++;
+            }
+        }
+        assertThat(differing).isGreaterThan(95);
+    }
+
+    @Test
+    void missingOrShortScrambleKeyIsRejected() {
+        assertThatThrownBy(() -> allocator(null)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> allocator("too-short")).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void autoCodeShapeIsTwoBase62HalvesJoinedByAnUnderscore() {
+        assertThat(ShortCodeAllocator.isAutoCodeShape("aB3d_E5gH")).isTrue();
+        assertThat(ShortCodeAllocator.isAutoCodeShape("aB3d_E5g")).isFalse();
+        assertThat(ShortCodeAllocator.isAutoCodeShape("aB3dE_5gH")).isFalse();
+        assertThat(ShortCodeAllocator.isAutoCodeShape("aB3d-E5gH")).isFalse();
+        assertThat(ShortCodeAllocator.isAutoCodeShape("aB3d_E5g_")).isFalse();
+        // Legacy random codes and 8-character aliases are a different shape
+        assertThat(ShortCodeAllocator.isAutoCodeShape("aB3dE5gH")).isFalse();
+        assertThat(ShortCodeAllocator.isAutoCodeShape("discount")).isFalse();
+        assertThat(ShortCodeAllocator.isAutoCodeShape(null)).isFalse();
+    }
+}
@@ -0,0 +1,118 @@
+package edu.au.life.shortenit.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BotDetectorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BotDetector detector = new BotDetector(meterRegistry, new String[0]);
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)",
+            "Mozilla/5.0 (compatible; bingbot/2.0; +http://www.bing.com/bingbot.htm)",
+            "facebookexternalhit/1.1 (+http://www.facebook.com/externalhit_uatext.php)",
+            "Slackbot-LinkExpanding 1.0 (+https://api.slack.com/robots)",
+            "Mozilla/5.0 (compatible; Discordbot/2.0; +https://discordapp.com)",
+            "TelegramBot (like TwitterBot)",
+            "WhatsApp/2.23.20.0",
+            "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) HeadlessChrome/124.0.0.0 Safari/537.36",
+            "curl/8.4.0",
+            "python-requests/2.31.0",
+            "Go-http-client/2.0",
+            "Java/17.0.2",
+            "Mozilla/5.0 (compatible; AhrefsBot/7.0; +http://ahrefs.com/robot/)",
+            "MyCustomCrawler 1.0",
+            "SOME-SPIDER",
+            "robobot/1.0"})
+    void flagsBots(String userAgent) {
+        assertThat(detector.detect(userAgent, null)).isEqualTo(BotDetector.Verdict.BOT);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36 Edg/124.0.2478.51",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.4 Safari/605.1.15",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_4 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.4 Mobile/15E148 Safari/604.1",
+            "Mozilla/5.0 (Linux; Android 14; Pixel 8) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.6367.82 Mobile Safari/537.36",
+            "Mozilla/5.0 (X11; Ubuntu; Linux x86_64; rv:125.0) Gecko/20100101 Firefox/125.0",
+            "Mozilla/5.0 (Linux; Android 13) Bot\u00e9 Br\u00f6wser",
+            ""})
+    void letsBrowsersThrough(String userAgent) {
+        assertThat(detector.detect(userAgent, null)).isEqualTo(BotDetector.Verdict.HUMAN);
+    }
+
+    @Test
+    void nullUserAgentIsHuman() {
+        assertThat(detector.detect(null, null)).isEqualTo(BotDetector.Verdict.HUMAN);
+    }
+
+    @Test
+    void purposeHeaderMarksPrefetchesAndPreviews() {
+        String browser = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36";
+
+        assertThat(detector.detect(browser, "prefetch")).isEqualTo(BotDetector.Verdict.PREFETCH);
+        assertThat(detector.detect(browser, "prefetch;prerender")).isEqualTo(BotDetector.Verdict.PREFETCH);
+        assertThat(detector.detect(browser, "Prerender")).isEqualTo(BotDetector.Verdict.PREFETCH);
+        assertThat(detector.detect(browser, "preview")).isEqualTo(BotDetector.Verdict.BOT);
+        assertThat(detector.detect(browser, "something-else")).isEqualTo(BotDetector.Verdict.HUMAN);
+        assertThat(detector.detect(null, "prefetch")).isEqualTo(BotDetector.Verdict.PREFETCH);
+    }
+
+    @Test
+    void knownBotWinsOverPrefetchHeader() {
+        assertThat(detector.detect("Googlebot/2.1", "prefetch")).isEqualTo(BotDetector.Verdict.BOT);
+    }
+
+    @Test
+    void extraTokensAreMatchedCaseInsensitively() {
+        BotDetector custom = new BotDetector(new SimpleMeterRegistry(), new String[]{" StatusCake ", "", "Pingdom.com_bot"});
+
+        assertThat(custom.detect("Mozilla/5.0 (compatible; StatusCake)", null)).isEqualTo(BotDetector.Verdict.BOT);
+        assertThat(custom.detect("PINGDOM.COM_BOT_VERSION_1.4", null)).isEqualTo(BotDetector.Verdict.BOT);
+        assertThat(detector.detect("PINGDOM.COM_BOT_VERSION_1.4", null)).isEqualTo(BotDetector.Verdict.HUMAN);
+    }
+
+    @Test
+    void agreesWithSubstringSearchOnGeneratedUserAgents() {
+        List<String> tokens = List.of("googlebot", "bingbot", "slackbot", "curl/", "java/", "bot/", "bot;",
+                "crawler", "spider", "headlesschrome", "whatsapp");
+        String[] fragments = {"Go", "ogle", "bot", "Bot", "/", ";", "bing", "Slack", "cur", "l/", "Ja", "va/",
+                "Crawl", "er", "Spi", "der", "Headless", "Chrome", "Whats", "App", " ", "(", "Mozilla/5.0"};
+        SplittableRandom random = new SplittableRandom(22);
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder userAgent = new StringBuilder();
+            int parts = 1 + random.nextInt(6);
+            for (int p = 0; p < parts; p++) {
+                userAgent.append(fragments[random.nextInt(fragments.length)]);
+            }
+            String lower = userAgent.toString().toLowerCase(Locale.ROOT);
+            boolean containsToken = tokens.stream().anyMatch(lower::contains);
+
+            assertThat(detector.detect(userAgent.toString(), null))
+                    .as(userAgent.toString())
+                    .isEqualTo(containsToken ? BotDetector.Verdict.BOT : BotDetector.Verdict.HUMAN);
+        }
+    }
+
+    @Test
+    void countsAutomatedVerdictsByType() {
+        detector.count(BotDetector.Verdict.BOT);
+        detector.count(BotDetector.Verdict.PREFETCH);
+        detector.count(BotDetector.Verdict.PREFETCH);
+        detector.count(BotDetector.Verdict.HUMAN);
+
+        assertThat(meterRegistry.get("clicks.automated").tag("type", "bot").counter().count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("clicks.automated").tag("type", "prefetch").counter().count()).isEqualTo(2.0);
+    }
+}
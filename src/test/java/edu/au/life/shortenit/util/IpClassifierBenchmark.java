@@ -0,0 +1,95 @@
+package edu.au.life.shortenit.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IpClassifier against the startsWith chain it replaced and against an InetAddress-based check,
+ * over a mix of public, private, IPv6 and IPv4-mapped client addresses.
+ *
+ * Run with: ./mvnw test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=IpClassifierBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IpClassifierBenchmark {
+
+    private static final String[] ADDRESSES = {
+            "8.8.8.8", "203.0.113.54", "10.12.0.7", "192.168.1.20", "172.20.3.4", "100.64.12.1",
+            "127.0.0.1", "169.254.169.254", "2001:4860:4860::8888", "2606:4700:4700::1111",
+            "fe80::1c2b:3aff:fe4d:5e6f%en0", "fd00::42", "::1", "::ffff:203.0.113.9", "81.2.69.160",
+            "2a02:1810:1c12:4d00:4d5:9a1c:2b3e:17"};
+
+    private IpClassifier classifier;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        classifier = new IpClassifier(new String[]{
+                "0.0.0.0/8", "10.0.0.0/8", "100.64.0.0/10", "127.0.0.0/8", "169.254.0.0/16",
+                "172.16.0.0/12", "192.0.0.0/24", "192.168.0.0/16", "198.18.0.0/15", "224.0.0.0/4",
+                "240.0.0.0/4", "::/128", "::1/128", "fc00::/7", "fe80::/10", "ff00::/8"});
+    }
+
+    @Benchmark
+    public boolean prefixTrie() {
+        return classifier.isPublic(ADDRESSES[next++ & (ADDRESSES.length - 1)]);
+    }
+
+    @Benchmark
+    public boolean startsWithChain() {
+        return !isLocalOrPrivateIp(ADDRESSES[next++ & (ADDRESSES.length - 1)]);
+    }
+
+    @Benchmark
+    public boolean inetAddress() {
+        try {
+            InetAddress address = InetAddress.getByName(ADDRESSES[next++ & (ADDRESSES.length - 1)]);
+            return !(address.isAnyLocalAddress() || address.isLoopbackAddress() || address.isLinkLocalAddress()
+                    || address.isSiteLocalAddress() || address.isMulticastAddress());
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+    // The check LocalGeoIpService used before IpClassifier; misses CGNAT, link-local and ULA ranges
+    private static boolean isLocalOrPrivateIp(String ip) {
+        return ip.equals("127.0.0.1")
+                || ip.equals("::1")
+                || ip.equals("0:0:0:0:0:0:0:1")
+                || ip.startsWith("192.168.")
+                || ip.startsWith("10.")
+                || ip.startsWith("172.16.")
+                || ip.startsWith("172.17.")
+                || ip.startsWith("172.18.")
+                || ip.startsWith("172.19.")
+                || ip.startsWith("172.20.")
+                || ip.startsWith("172.21.")
+                || ip.startsWith("172.22.")
+                || ip.startsWith("172.23.")
+                || ip.startsWith("172.24.")
+                || ip.startsWith("172.25.")
+                || ip.startsWith("172.26.")
+                || ip.startsWith("172.27.")
+                || ip.startsWith("172.28.")
+                || ip.startsWith("172.29.")
+                || ip.startsWith("172.30.")
+                || ip.startsWith("172.31.");
+    }
+}
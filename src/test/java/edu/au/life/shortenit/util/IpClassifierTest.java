@@ -0,0 +1,124 @@
+package edu.au.life.shortenit.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IpClassifierTest {
+
+    private static final String[] RANGES = {
+            "0.0.0.0/8", "10.0.0.0/8", "100.64.0.0/10", "127.0.0.0/8", "169.254.0.0/16",
+            "172.16.0.0/12", "192.0.0.0/24", "192.168.0.0/16", "198.18.0.0/15", "224.0.0.0/4", "240.0.0.0/4",
+            "::/128", "::1/128", "fc00::/7", "fe80::/10", "ff00::/8"};
+
+    private final IpClassifier classifier = new IpClassifier(RANGES);
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "10.1.2.3", "127.0.0.1", "100.64.0.1", "100.127.255.255", "169.254.10.20", "172.16.0.1",
+            "172.31.255.255", "192.168.1.1", "198.19.0.1", "224.0.0.251", "255.255.255.255", "0.0.0.0",
+            "::", "::1", "fd12:3456::1", "fe80::1%eth0", "FE80::ABCD", "ff02::1",
+            "::ffff:10.0.0.1", "::ffff:192.168.0.1"})
+    void reservedAddresses(String ip) {
+        assertThat(classifier.isReserved(ip)).isTrue();
+        assertThat(classifier.isPublic(ip)).isFalse();
+        assertThat(classifier.isValid(ip)).isTrue();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "8.8.8.8", "1.1.1.1", "100.63.255.255", "100.128.0.0", "172.15.255.255", "172.32.0.0",
+            "192.0.1.1", "198.20.0.1", "223.255.255.255",
+            "2001:4860:4860::8888", "2606:4700:4700::1111", "::2", "fec0::1", "::ffff:8.8.8.8",
+            "2001:db8:0:0:0:0:0:1", "2001:db8::192.0.2.1"})
+    void publicAddresses(String ip) {
+        assertThat(classifier.isPublic(ip)).isTrue();
+        assertThat(classifier.isReserved(ip)).isFalse();
+        assertThat(classifier.isValid(ip)).isTrue();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "", "unknown", "1.2.3", "1.2.3.4.5", "256.1.1.1", "01.2.3.4", "1..2.3", "1.2.3.4.",
+            "example.com", ":::", "1:2:3:4:5:6:7:8:9", "1::2::3", "12345::1", ":1::", "1::2:", "g::1",
+            "::ffff:1.2.3", "1.2.3.4::"})
+    void malformedAddressesAreNeitherPublicNorReserved(String ip) {
+        assertThat(classifier.isValid(ip)).isFalse();
+        assertThat(classifier.isPublic(ip)).isFalse();
+        assertThat(classifier.isReserved(ip)).isFalse();
+    }
+
+    @Test
+    void nullIsInvalid() {
+        assertThat(classifier.isValid(null)).isFalse();
+        assertThat(classifier.isPublic(null)).isFalse();
+    }
+
+    @Test
+    void agreesWithInetAddressOnRandomAddresses() throws UnknownHostException {
+        List<byte[][]> ranges = new ArrayList<>();
+        for (String range : RANGES) {
+            int slash = range.indexOf('/');
+            byte[] network = InetAddress.getByName(range.substring(0, slash)).getAddress();
+            ranges.add(new byte[][]{network, {(byte) Integer.parseInt(range.substring(slash + 1))}});
+        }
+
+        SplittableRandom random = new SplittableRandom(20);
+        for (int i = 0; i < 20_000; i++) {
+            byte[] address = new byte[i % 2 == 0 ? 4 : 16];
+            random.nextBytes(address);
+            if (address.length == 16 && i % 10 == 1) {
+                // steer some IPv6 samples into the reserved prefixes
+                address[0] = (byte) (0xfc + random.nextInt(4));
+                address[1] = (byte) (0x80 + random.nextInt(0x80));
+            }
+            String text = InetAddress.getByAddress(address).getHostAddress();
+
+            boolean expected = ranges.stream().anyMatch(range -> inRange(address, range[0], range[1][0] & 0xff));
+            assertThat(classifier.isReserved(text)).as(text).isEqualTo(expected);
+            assertThat(classifier.isPublic(text)).as(text).isEqualTo(!expected);
+        }
+    }
+
+    @Test
+    void rejectsInvalidConfiguredRanges() {
+        assertThatThrownBy(() -> new IpClassifier(new String[]{"10.0.0.0/33"}))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new IpClassifier(new String[]{"not-an-ip/8"}))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new IpClassifier(new String[]{"fc00::/x"}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void singleAddressRangeWithoutPrefixLength() {
+        IpClassifier single = new IpClassifier(new String[]{"203.0.113.7", "2001:db8::1"});
+
+        assertThat(single.isReserved("203.0.113.7")).isTrue();
+        assertThat(single.isReserved("203.0.113.8")).isFalse();
+        assertThat(single.isReserved("2001:db8::1")).isTrue();
+        assertThat(single.isReserved("2001:db8::2")).isFalse();
+    }
+
+    private static boolean inRange(byte[] address, byte[] network, int bits) {
+        if (address.length != network.length) {
+            return false;
+        }
+        for (int bit = 0; bit < bits; bit++) {
+            int mask = 0x80 >>> (bit % 8);
+            if ((address[bit / 8] & mask) != (network[bit / 8] & mask)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,44 @@
+package edu.au.life.shortenit.util;
+
+import edu.au.life.shortenit.exception.InvalidCursorException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PageCursorTest {
+
+    @Test
+    void roundTripsThroughItsToken() {
+        PageCursor cursor = new PageCursor(LocalDateTime.of(2024, 3, 9, 14, 5, 7, 123_456_000), 42L);
+
+        String token = cursor.encode();
+
+        assertThat(token).doesNotContain("=", "+", "/");
+        assertThat(PageCursor.decode(token)).isEqualTo(cursor);
+    }
+
+    @Test
+    void roundTripsWholeSecondsAndLargeIds() {
+        PageCursor cursor = new PageCursor(LocalDateTime.of(2024, 1, 1, 0, 0), Long.MAX_VALUE);
+
+        assertThat(PageCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void rejectsMalformedTokens() {
+        assertThatThrownBy(() -> PageCursor.decode("not base64!")).isInstanceOf(InvalidCursorException.class);
+        assertThatThrownBy(() -> PageCursor.decode("")).isInstanceOf(InvalidCursorException.class);
+        assertThatThrownBy(() -> PageCursor.decode(token("2024-01-01T00:00"))).isInstanceOf(InvalidCursorException.class);
+        assertThatThrownBy(() -> PageCursor.decode(token("yesterday|1"))).isInstanceOf(InvalidCursorException.class);
+        assertThatThrownBy(() -> PageCursor.decode(token("2024-01-01T00:00|abc"))).isInstanceOf(InvalidCursorException.class);
+    }
+
+    private static String token(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,63 @@
+package edu.au.life.shortenit.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Device, browser and OS for one user agent: the three lowercase-and-contains getters that
+ * classify() replaced, a single-pass classify() with caching disabled, and a cached classify().
+ *
+ * Run with: ./mvnw test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=UserAgentParserBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserAgentParserBenchmark {
+
+    private static final String[] USER_AGENTS = UserAgentParserTest.SAMPLE_USER_AGENTS;
+
+    private UserAgentParser uncachedParser;
+    private UserAgentParser cachedParser;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        // A zero TTL makes every put a no-op, so each call runs the scan
+        uncachedParser = new UserAgentParser(new SimpleMeterRegistry(), 1, 0);
+        cachedParser = new UserAgentParser(new SimpleMeterRegistry(), 10_000, 86_400);
+    }
+
+    @Benchmark
+    public void previousGetters(Blackhole blackhole) {
+        String userAgent = USER_AGENTS[next++ % USER_AGENTS.length];
+        blackhole.consume(UserAgentParserTest.PreviousParser.getDeviceType(userAgent));
+        blackhole.consume(UserAgentParserTest.PreviousParser.getBrowser(userAgent));
+        blackhole.consume(UserAgentParserTest.PreviousParser.getOperatingSystem(userAgent));
+    }
+
+    @Benchmark
+    public UserAgentParser.Classification classifyUncached() {
+        return uncachedParser.classify(USER_AGENTS[next++ % USER_AGENTS.length]);
+    }
+
+    @Benchmark
+    public UserAgentParser.Classification classifyCached() {
+        return cachedParser.classify(USER_AGENTS[next++ % USER_AGENTS.length]);
+    }
+}
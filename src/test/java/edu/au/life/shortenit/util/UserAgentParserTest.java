@@ -0,0 +1,193 @@
+package edu.au.life.shortenit.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserAgentParserTest {
+
+    static final String[] SAMPLE_USER_AGENTS = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36 Edg/124.0.2478.51",
+            "Mozilla/5.0 (Windows NT 6.1; WOW64; Trident/7.0; rv:11.0) like Gecko",
+            "Mozilla/4.0 (compatible; MSIE 8.0; Windows NT 6.1; Trident/4.0)",
+            "Mozilla/5.0 (Windows NT 6.3; Win64; x64; rv:109.0) Gecko/20100101 Firefox/115.0",
+            "Mozilla/5.0 (Windows NT 6.2; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/109.0.0.0 Safari/537.36 OPR/95.0.0.0",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.4 Safari/605.1.15",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 14.4; rv:125.0) Gecko/20100101 Firefox/125.0",
+            "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (X11; Ubuntu; Linux x86_64; rv:125.0) Gecko/20100101 Firefox/125.0",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_4 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.4 Mobile/15E148 Safari/604.1",
+            "Mozilla/5.0 (iPad; CPU OS 17_4 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) CriOS/124.0.6367.88 Mobile/15E148 Safari/604.1",
+            "Mozilla/5.0 (iPod touch; CPU iPhone OS 12_5 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Mobile/15E148",
+            "Mozilla/5.0 (Linux; Android 14; Pixel 8) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.6367.82 Mobile Safari/537.36",
+            "Mozilla/5.0 (Linux; Android 13; SM-X710) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (Android 14; Mobile; rv:125.0) Gecko/125.0 Firefox/125.0",
+            "Mozilla/5.0 (Windows Phone 10.0; Android 6.0.1; Microsoft; Lumia 950) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/52.0.2743.116 Mobile Safari/537.36 Edge/15.15063",
+            "Mozilla/5.0 (BlackBerry; U; BlackBerry 9900; en) AppleWebKit/534.11+ (KHTML, like Gecko) Version/7.1.0.346 Mobile Safari/534.11+",
+            "Opera/9.80 (Windows NT 6.1; U; en) Presto/2.10.289 Version/12.02",
+            "Mozilla/5.0 (X11; CrOS x86_64 14541.0.0) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (Linux; U; Android 4.0.3; en-us; KFTT Build/IML74K) AppleWebKit/534.30 (KHTML, like Gecko) Version/4.0 Safari/534.30 Silk/3.68",
+            "Mozilla/5.0 (PlayStation; PlayStation 5/2.26) AppleWebKit/605.1.15 (KHTML, like Gecko)",
+            "curl/8.4.0",
+            "python-requests/2.31.0",
+            "Windows-Update-Agent/10.0.10011.16384 Client-Protocol/2.0",
+            "Dalvik/2.1.0 (Linux; U; Android 11; Tablet Build/RP1A)",
+            "MOZILLA/5.0 (WINDOWS NT 10.0) CHROME/1.0 EDG/1.0",
+            "-"
+    };
+
+    private final UserAgentParser parser = new UserAgentParser(new SimpleMeterRegistry(), 1000, 3600);
+
+    @Test
+    void classifyMatchesThePreviousGettersOnRealUserAgents() {
+        for (String userAgent : SAMPLE_USER_AGENTS) {
+            assertParity(userAgent);
+        }
+    }
+
+    @Test
+    void classifyMatchesThePreviousGettersOnGeneratedUserAgents() {
+        // Keyword fragments in random case and order, including overlapping and truncated ones
+        String[] fragments = {
+                "iPad", "Tablet", "Android", "Mobile", "iPhone", "iPod", "BlackBerry", "Windows Phone",
+                "Edg/", "Edg", "Edge/", "Chrome/", "Chrome", "Firefox/", "Safari/", "Opera", "OPR/", "MSIE",
+                "Trident/", "Windows NT 10", "Windows NT 6.3", "Windows NT 6.2", "Windows NT 6.1", "Windows",
+                "Mac OS X", "Linux", "Chrom", "Safar", "Lin", "Mac OS", "windows nt 6", "; ", " ", "/", "(", ")",
+                "1", "x64", "Gecko", "KHTML"};
+        SplittableRandom random = new SplittableRandom(21);
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder userAgent = new StringBuilder();
+            int parts = 1 + random.nextInt(8);
+            for (int p = 0; p < parts; p++) {
+                String fragment = fragments[random.nextInt(fragments.length)];
+                for (char c : fragment.toCharArray()) {
+                    userAgent.append(random.nextBoolean() ? Character.toUpperCase(c) : Character.toLowerCase(c));
+                }
+            }
+            assertParity(userAgent.toString());
+        }
+    }
+
+    @Test
+    void missingUserAgentIsUnknown() {
+        assertThat(parser.classify(null)).isEqualTo(new UserAgentParser.Classification("unknown", "unknown", "unknown"));
+        assertThat(parser.classify("")).isEqualTo(new UserAgentParser.Classification("unknown", "unknown", "unknown"));
+        assertParity(null);
+        assertParity("");
+    }
+
+    @Test
+    void repeatedLookupsReturnTheCachedClassification() {
+        String userAgent = SAMPLE_USER_AGENTS[0];
+
+        UserAgentParser.Classification first = parser.classify(userAgent);
+
+        assertThat(parser.classify(new String(userAgent.toCharArray()))).isSameAs(first);
+        assertThat(first).isEqualTo(new UserAgentParser.Classification("desktop", "Chrome", "Windows 10"));
+    }
+
+    @Test
+    void classifiesCommonDevices() {
+        List<UserAgentParser.Classification> classifications = new ArrayList<>();
+        for (String userAgent : SAMPLE_USER_AGENTS) {
+            classifications.add(parser.classify(userAgent));
+        }
+
+        assertThat(classifications.get(1).browser()).isEqualTo("Edge");
+        assertThat(classifications.get(2).browser()).isEqualTo("Internet Explorer");
+        assertThat(classifications.get(6)).isEqualTo(new UserAgentParser.Classification("desktop", "Safari", "macOS"));
+        assertThat(classifications.get(10).deviceType()).isEqualTo("mobile");
+        assertThat(classifications.get(11).deviceType()).isEqualTo("tablet");
+        assertThat(classifications.get(14)).isEqualTo(new UserAgentParser.Classification("tablet", "Chrome", "Linux"));
+        assertThat(classifications.get(22)).isEqualTo(new UserAgentParser.Classification("desktop", "Other", "Other"));
+    }
+
+    private void assertParity(String userAgent) {
+        UserAgentParser.Classification classification = parser.classify(userAgent);
+        assertThat(classification.deviceType()).as(userAgent).isEqualTo(PreviousParser.getDeviceType(userAgent));
+        assertThat(classification.browser()).as(userAgent).isEqualTo(PreviousParser.getBrowser(userAgent));
+        assertThat(classification.operatingSystem()).as(userAgent).isEqualTo(PreviousParser.getOperatingSystem(userAgent));
+
+        assertThat(parser.getDeviceType(userAgent)).isEqualTo(classification.deviceType());
+        assertThat(parser.getBrowser(userAgent)).isEqualTo(classification.browser());
+        assertThat(parser.getOperatingSystem(userAgent)).isEqualTo(classification.operatingSystem());
+    }
+
+    /**
+     * The getters as they were before classify() existed: a lowercase copy and a contains() per keyword.
+     */
+    static final class PreviousParser {
+
+        static String getDeviceType(String userAgent) {
+            if (userAgent == null || userAgent.isEmpty()) {
+                return "unknown";
+            }
+            String ua = userAgent.toLowerCase(Locale.ROOT);
+            if (ua.contains("ipad") || ua.contains("tablet")
+                    || (ua.contains("android") && !ua.contains("mobile"))) {
+                return "tablet";
+            }
+            if (ua.contains("mobile") || ua.contains("iphone") || ua.contains("ipod")
+                    || ua.contains("blackberry") || ua.contains("windows phone")
+                    || (ua.contains("android") && ua.contains("mobile"))) {
+                return "mobile";
+            }
+            return "desktop";
+        }
+
+        static String getBrowser(String userAgent) {
+            if (userAgent == null || userAgent.isEmpty()) {
+                return "unknown";
+            }
+            String ua = userAgent.toLowerCase(Locale.ROOT);
+            if (ua.contains("edg/")) {
+                return "Edge";
+            } else if (ua.contains("chrome/") && !ua.contains("edg")) {
+                return "Chrome";
+            } else if (ua.contains("firefox/")) {
+                return "Firefox";
+            } else if (ua.contains("safari/") && !ua.contains("chrome")) {
+                return "Safari";
+            } else if (ua.contains("opera") || ua.contains("opr/")) {
+                return "Opera";
+            } else if (ua.contains("msie") || ua.contains("trident/")) {
+                return "Internet Explorer";
+            }
+            return "Other";
+        }
+
+        static String getOperatingSystem(String userAgent) {
+            if (userAgent == null || userAgent.isEmpty()) {
+                return "unknown";
+            }
+            String ua = userAgent.toLowerCase(Locale.ROOT);
+            if (ua.contains("windows nt 10")) {
+                return "Windows 10";
+            } else if (ua.contains("windows nt 6.3")) {
+                return "Windows 8.1";
+            } else if (ua.contains("windows nt 6.2")) {
+                return "Windows 8";
+            } else if (ua.contains("windows nt 6.1")) {
+                return "Windows 7";
+            } else if (ua.contains("windows")) {
+                return "Windows";
+            } else if (ua.contains("mac os x")) {
+                return "macOS";
+            } else if (ua.contains("linux")) {
+                return "Linux";
+            } else if (ua.contains("android")) {
+                return "Android";
+            } else if (ua.contains("iphone") || ua.contains("ipad")) {
+                return "iOS";
+            }
+            return "Other";
+        }
+    }
+}